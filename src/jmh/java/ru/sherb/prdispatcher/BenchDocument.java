@@ -0,0 +1,46 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+
+public final class BenchDocument implements Document {
+
+    private final String typeName;
+    private final PaperSize paperSize;
+    private final Duration printDuration;
+
+    public BenchDocument(String typeName, PaperSize paperSize, Duration printDuration) {
+        this.typeName = typeName;
+        this.paperSize = paperSize;
+        this.printDuration = printDuration;
+    }
+
+    /**
+     * @return Document of one of 100 type names with duration from 1 to 1000 ms
+     */
+    public static BenchDocument of(int i) {
+        return new BenchDocument(
+                "type-" + i % 100,
+                PaperSize.values()[i % PaperSize.values().length],
+                Duration.ofMillis(1 + i % 1000));
+    }
+
+    @Override
+    public String typeName() {
+        return typeName;
+    }
+
+    @Override
+    public PaperSize paperSize() {
+        return paperSize;
+    }
+
+    @Override
+    public Duration printDuration() {
+        return printDuration;
+    }
+
+    @Override
+    public String toString() {
+        return "BenchDocument[typeName: '" + typeName + "']";
+    }
+}
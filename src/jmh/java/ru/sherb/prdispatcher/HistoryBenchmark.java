@@ -0,0 +1,101 @@
+package ru.sherb.prdispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of read and cancel operations against the history of given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class HistoryBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int history;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private PrintDispatcher dispatcher;
+    private long finishedJobId;
+
+    @Setup
+    public void setUp() throws ExecutionException, InterruptedException {
+        var builder = DefaultPrintDispatcher.builder().printer(new NoopPrinter());
+        dispatcher = (indexed ? builder.indexPrintedDocs() : builder).build();
+        var documents = IntStream.range(0, history)
+                                 .mapToObj(BenchDocument::of)
+                                 .collect(Collectors.toList());
+        List<PrintJob> jobs = dispatcher.printAll(documents);
+        var last = jobs.get(jobs.size() - 1);
+        last.completion().get();
+        finishedJobId = jobs.get(jobs.size() / 2).id();
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Benchmark
+    public Document cancelByTypeName() {
+        return dispatcher.cancel("type-1");
+    }
+
+    @Benchmark
+    public boolean cancelById() {
+        return dispatcher.cancel(finishedJobId);
+    }
+
+    @Benchmark
+    public PrintJob.Status status() {
+        return dispatcher.status(finishedJobId);
+    }
+
+    @Benchmark
+    public List<Document> printedDocs() {
+        return dispatcher.printedDocs();
+    }
+
+    @Benchmark
+    public List<Document> printedDocsSorted() {
+        return dispatcher.printedDocs(Comparator.comparing(Document::printDuration));
+    }
+
+    @Benchmark
+    public List<Document> lastPrinted50() {
+        return dispatcher.printedDocs(PrintedQuery.byCompletionTime().reversed().limit(50));
+    }
+
+    @Benchmark
+    public List<Document> longestPrinted50() {
+        return dispatcher.printedDocs(PrintedQuery.byPrintDuration().reversed().paperSize(PaperSize.A4).limit(50));
+    }
+
+    @Benchmark
+    public Duration calcAvgPrintDuration() {
+        return dispatcher.calcAvgPrintDuration();
+    }
+}
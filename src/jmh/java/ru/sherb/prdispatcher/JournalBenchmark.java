@@ -0,0 +1,73 @@
+package ru.sherb.prdispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link PrintDispatcher#print} with the journal off, with background sync
+ * and with sync of every submission. With many producers one fsync is shared by all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class JournalBenchmark {
+
+    @Param({"memory", "async", "sync"})
+    public String journal;
+
+    private final Document document = BenchDocument.of(42);
+
+    private Path dir;
+    private PrintDispatcher dispatcher;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("print-journal");
+        var builder = DefaultPrintDispatcher.builder()
+                .printer(new NoopPrinter())
+                .history(HistoryRetention.unlimited().maxEntries(10_000));
+        if (!journal.equals("memory")) {
+            builder.journal(PrintJournal.of(dir.resolve("print.journal")).syncOnSubmit(journal.equals("sync")));
+        }
+        dispatcher = builder.build();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        dispatcher.stop();
+        Files.deleteIfExists(dir.resolve("print.journal"));
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public PrintJob print1() {
+        return dispatcher.print(document);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public PrintJob print64() {
+        return dispatcher.print(document);
+    }
+}
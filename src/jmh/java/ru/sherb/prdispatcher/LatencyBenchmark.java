@@ -0,0 +1,60 @@
+package ru.sherb.prdispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from {@link PrintDispatcher#print} until the job is completed
+ * when the printer prints instantly, i.e. the overhead of dispatching one job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyBenchmark {
+
+    @Param({"1", "4"})
+    public int printers;
+
+    private final Document document = BenchDocument.of(42);
+
+    private PrintDispatcher dispatcher;
+
+    @Setup
+    public void setUp() {
+        var pool = new ArrayList<Printer>();
+        for (int i = 0; i < printers; i++) {
+            pool.add(new NoopPrinter());
+        }
+        dispatcher = DefaultPrintDispatcher.builder()
+                .printers(pool)
+                .history(HistoryRetention.unlimited().maxEntries(10_000))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Benchmark
+    public Document printAndWait() throws ExecutionException, InterruptedException {
+        return dispatcher.print(document).completion().get();
+    }
+}
@@ -0,0 +1,59 @@
+package ru.sherb.prdispatcher;
+
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of logging per printed document. Messages go to a null appender,
+ * so {@code trace} shows the cost of building them, as all of them were logged at info level before,
+ * and {@code info} shows the quiet mode. Compare allocations with {@code -prof gc},
+ * {@code gc.alloc.rate.norm} counts bytes allocated by all threads per document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark {
+
+    @Param({"info", "trace"})
+    public String level;
+
+    private final Document document = BenchDocument.of(42);
+
+    private PrintDispatcher dispatcher;
+
+    @Setup
+    public void setUp() {
+        Configurator.setLevel("ru.sherb.prdispatcher", org.apache.logging.log4j.Level.valueOf(level));
+        dispatcher = DefaultPrintDispatcher.builder()
+                .printer(new NoopPrinter())
+                .history(HistoryRetention.unlimited().maxEntries(10_000))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Benchmark
+    public Document printAndWait() throws ExecutionException, InterruptedException {
+        return dispatcher.print(document).completion().get();
+    }
+}
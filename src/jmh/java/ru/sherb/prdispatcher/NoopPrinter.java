@@ -0,0 +1,16 @@
+package ru.sherb.prdispatcher;
+
+/**
+ * Printer that prints instantly, so benchmarks measure only the dispatcher.
+ */
+public class NoopPrinter implements Printer {
+
+    @Override
+    public void print(Document document) {
+    }
+
+    @Override
+    public Document stop() {
+        return null;
+    }
+}
@@ -0,0 +1,93 @@
+package ru.sherb.prdispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Time of {@link PrintDispatcher#stop()} with the history of given size and 1000 queued documents.
+ * Every invocation needs a new dispatcher, so it runs in single shot mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class StopBenchmark {
+
+    private static final int QUEUED = 1000;
+
+    @Param({"1000", "100000"})
+    public int history;
+
+    private PrintDispatcher dispatcher;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws ExecutionException, InterruptedException {
+        var blocked = new BlockingPrinter();
+        dispatcher = DefaultPrintDispatcher.builder()
+                .printer(blocked)
+                .build();
+        var printed = dispatcher.printAll(documents(history));
+        printed.get(printed.size() - 1).completion().get();
+
+        blocked.block();
+        dispatcher.printAll(documents(QUEUED));
+    }
+
+    private static List<Document> documents(int count) {
+        return IntStream.range(0, count)
+                        .mapToObj(BenchDocument::of)
+                        .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Document> stop() {
+        return dispatcher.stop();
+    }
+
+    /**
+     * Prints instantly until blocked, then waits in every print until stopped.
+     */
+    private static class BlockingPrinter extends NoopPrinter {
+        private volatile boolean blocked = false;
+
+        void block() {
+            blocked = true;
+        }
+
+        @Override
+        public synchronized void print(Document document) {
+            while (blocked) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public synchronized Document stop() {
+            notifyAll();
+            return null;
+        }
+    }
+}
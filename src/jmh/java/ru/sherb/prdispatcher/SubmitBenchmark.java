@@ -0,0 +1,126 @@
+package ru.sherb.prdispatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Throughput of {@link PrintDispatcher#print} and {@link PrintDispatcher#printAll}
+ * with different number of producer threads and queues. The printer prints instantly,
+ * a new dispatcher is created for every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SubmitBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"fifo", "lockFree", "workStealing"})
+    public String queue;
+
+    @Param({"1", "4"})
+    public int printers;
+
+    private final Document document = BenchDocument.of(42);
+    private final List<Document> batch = IntStream.range(0, BATCH)
+                                                  .mapToObj(BenchDocument::of)
+                                                  .collect(Collectors.toList());
+
+    private PrintDispatcher dispatcher;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        var builder = DefaultPrintDispatcher.builder();
+        for (int i = 0; i < printers; i++) {
+            builder.printer(new NoopPrinter());
+        }
+        dispatcher = builder
+                .queue(printQueue())
+                .history(HistoryRetention.unlimited().maxEntries(10_000))
+                .build();
+    }
+
+    private PrintQueue printQueue() {
+        switch (queue) {
+            case "lockFree":
+                return PrintQueue.lockFree();
+            case "workStealing":
+                return PrintQueue.workStealing();
+            default:
+                return PrintQueue.fifo();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public PrintJob print1() {
+        return dispatcher.print(document);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public PrintJob print4() {
+        return dispatcher.print(document);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public PrintJob print16() {
+        return dispatcher.print(document);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public PrintJob print64() {
+        return dispatcher.print(document);
+    }
+
+    /**
+     * Batch is waited to be printed, otherwise the queue grows faster than any printer can empty it.
+     */
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(BATCH)
+    public Document printAllAndWait1() throws ExecutionException, InterruptedException {
+        return printAllAndWait();
+    }
+
+    @Benchmark
+    @Threads(16)
+    @OperationsPerInvocation(BATCH)
+    public Document printAllAndWait16() throws ExecutionException, InterruptedException {
+        return printAllAndWait();
+    }
+
+    private Document printAllAndWait() throws ExecutionException, InterruptedException {
+        var jobs = dispatcher.printAll(batch);
+        return jobs.get(jobs.size() - 1).completion().get();
+    }
+}
@@ -0,0 +1,48 @@
+package ru.sherb.prdispatcher;
+
+import java.util.List;
+
+/**
+ * Accounts jobs between {@link PrintDispatcher#print} and the moment they leave the queue,
+ * see {@link PrintAdmission}. Every method does nothing by default.
+ */
+interface Admission {
+
+    static Admission none() {
+        return new Admission() {
+        };
+    }
+
+    static Admission of(PrintAdmission config) {
+        return config.isBounded() ? new BoundedAdmission(config) : none();
+    }
+
+    /**
+     * Reserves place for the jobs, waiting for it or making it if the policy says so.
+     *
+     * @return Queued jobs that are aborted to make place
+     * @throws java.util.concurrent.RejectedExecutionException if there is no place for the jobs
+     */
+    default List<PrintJob> admit(List<PrintJob> jobs) {
+        return List.of();
+    }
+
+    /**
+     * Reserves place for the jobs whether there is place or not, e.g. for recovered jobs.
+     */
+    default void force(List<PrintJob> jobs) {
+    }
+
+    /**
+     * Releases place of the job that has left the queue or is not queued after {@link #admit}.
+     * Every call but the first for the same job does nothing.
+     */
+    default void release(PrintJob job) {
+    }
+
+    /**
+     * Rejects waiting and future jobs.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,205 @@
+package ru.sherb.prdispatcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the number and the work of admitted jobs under one lock. Queued jobs are ordered by priority
+ * only for {@link PrintAdmission.Overflow#SHED_LOWEST_PRIORITY}.
+ * The place of a job is released once, by whoever wins {@link PrintJob#release()}.
+ */
+class BoundedAdmission implements Admission {
+
+    private static final Comparator<PrintJob> SHED_ORDER =
+            Comparator.<PrintJob>comparingInt(job -> job.document().priority())
+                      .thenComparing(Comparator.comparingLong(PrintJob::id).reversed());
+
+    private final PrintAdmission config;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final NavigableSet<PrintJob> byPriority;
+
+    private long queuedWork;
+    private int queuedDocs;
+    private boolean closed;
+
+    BoundedAdmission(PrintAdmission config) {
+        this.config = config;
+        this.byPriority = config.overflow() == PrintAdmission.Overflow.SHED_LOWEST_PRIORITY
+                ? new TreeSet<>(SHED_ORDER)
+                : null;
+    }
+
+    @Override
+    public List<PrintJob> admit(List<PrintJob> jobs) {
+        long work = workOf(jobs);
+        int docs = jobs.size();
+        List<PrintJob> shed = List.of();
+        lock.lock();
+        try {
+            checkOpen();
+            if (!fits(work, docs)) {
+                switch (config.overflow()) {
+                    case BLOCK:
+                        awaitPlace(work, docs);
+                        break;
+                    case SHED_LOWEST_PRIORITY:
+                        shed = shed(jobs, work, docs);
+                        break;
+                    default:
+                        throw full(docs);
+                }
+            }
+            add(jobs, work);
+            return shed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void force(List<PrintJob> jobs) {
+        lock.lock();
+        try {
+            add(jobs, workOf(jobs));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(List<PrintJob> jobs, long work) {
+        queuedWork = Durations.saturatedAdd(queuedWork, work);
+        queuedDocs += jobs.size();
+        if (byPriority != null) {
+            byPriority.addAll(jobs);
+        }
+    }
+
+    @Override
+    public void release(PrintJob job) {
+        if (!job.release()) {
+            return;
+        }
+        lock.lock();
+        try {
+            remove(job);
+            if (lock.hasWaiters(released)) {
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(PrintJob job) {
+        queuedWork -= workOf(job);
+        queuedDocs--;
+        if (byPriority != null) {
+            byPriority.remove(job);
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long work, int docs) {
+        return queuedDocs == 0
+                || (docs <= config.maxQueuedDocs() - queuedDocs
+                && work <= config.maxQueuedWorkNanos() - queuedWork);
+    }
+
+    private void awaitPlace(long work, int docs) {
+        long nanos = config.blockTimeoutNanos();
+        try {
+            while (!fits(work, docs)) {
+                if (nanos <= 0) {
+                    throw full(docs);
+                }
+                nanos = released.awaitNanos(nanos);
+                checkOpen();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("interrupted while waiting for place in the queue", e);
+        }
+    }
+
+    /**
+     * Aborts queued jobs of lower priority than any of the new jobs until they fit. A job that is taken
+     * by a printer meanwhile can not be aborted, but it has left the queue, so its place is released here
+     * and not when the printer gets the lock.
+     */
+    private List<PrintJob> shed(List<PrintJob> jobs, long work, int docs) {
+        int priority = jobs.stream().mapToInt(job -> job.document().priority()).min().orElseThrow();
+        var shed = new ArrayList<PrintJob>();
+        while (!fits(work, docs)) {
+            var victims = new ArrayList<PrintJob>();
+            long freedWork = 0;
+            int freedDocs = 0;
+            for (PrintJob job : byPriority) {
+                if (job.document().priority() >= priority) {
+                    break;
+                }
+                victims.add(job);
+                freedWork += workOf(job);
+                freedDocs++;
+                if (fitsAfter(work, docs, freedWork, freedDocs)) {
+                    break;
+                }
+            }
+            if (!fitsAfter(work, docs, freedWork, freedDocs)) {
+                throw full(docs);
+            }
+            for (PrintJob victim : victims) {
+                if (victim.abortQueued()) {
+                    shed.add(victim);
+                } else if (victim.release()) {
+                    remove(victim);
+                }
+            }
+        }
+        return shed;
+    }
+
+    private boolean fitsAfter(long work, int docs, long freedWork, int freedDocs) {
+        return queuedDocs == freedDocs
+                || (docs <= config.maxQueuedDocs() - (queuedDocs - freedDocs)
+                && work <= config.maxQueuedWorkNanos() - (queuedWork - freedWork));
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new RejectedExecutionException("dispatcher is stopped");
+        }
+    }
+
+    private static RejectedExecutionException full(int docs) {
+        return new RejectedExecutionException("queue is full, can not admit " + docs + " documents");
+    }
+
+    private static long workOf(List<PrintJob> jobs) {
+        long work = 0;
+        for (PrintJob job : jobs) {
+            work = Durations.saturatedAdd(work, workOf(job));
+        }
+        return work;
+    }
+
+    private static long workOf(PrintJob job) {
+        return Durations.workNanos(job.document());
+    }
+}
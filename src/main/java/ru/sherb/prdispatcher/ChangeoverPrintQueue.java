@@ -0,0 +1,93 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps a printer on its current paper size while there are documents of that size,
+ * so documents are grouped by {@link Document#paperSize()} instead of switching trays for every document.
+ * The oldest document that the printer supports is skipped only while it has waited less than
+ * {@link Printer#changeoverCost()} that skipping it saves, so a printer with a cheap changeover
+ * hardly groups documents, and never longer than {@code maxWait}.
+ * <p>
+ * The current paper size is {@link Printer#currentPaperSize()} or, if the printer does not know it,
+ * the paper size of the last document it has taken. Every time a document of the current paper size
+ * is taken before an older document of another size, a changeover is counted as saved.
+ */
+public final class ChangeoverPrintQueue extends PaperSizePrintQueue {
+
+    private final long maxWaitNanos;
+    private final LongSupplier nanoTime;
+    // guarded by lock
+    private final Map<Printer, PaperSize> lastPaperSizes = new IdentityHashMap<>();
+
+    private volatile long changeoversSaved;
+    private volatile long changeoverNanosSaved;
+
+    ChangeoverPrintQueue(Duration maxWait, LongSupplier nanoTime) {
+        if (maxWait.isNegative()) {
+            throw new IllegalArgumentException("max wait must not be negative: " + maxWait);
+        }
+        this.maxWaitNanos = Durations.saturatedNanos(maxWait);
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @return Number of times a printer has continued with its paper size instead of taking an older document
+     */
+    public long changeoversSaved() {
+        return changeoversSaved;
+    }
+
+    /**
+     * @return Sum of {@link Printer#changeoverCost()} of saved changeovers
+     */
+    public Duration changeoverTimeSaved() {
+        return Duration.ofNanos(changeoverNanosSaved);
+    }
+
+    @Override
+    long queuedAt() {
+        return nanoTime.getAsLong();
+    }
+
+    @Override
+    Queue<Entry> select(Printer printer) {
+        var oldest = oldestOf(printer.supportedPaperSizes());
+        if (oldest == null) {
+            return null;
+        }
+        var current = currentPaperSize(printer);
+        var head = oldest.peek();
+        long maxSkipNanos = Math.min(maxWaitNanos, Durations.saturatedNanos(printer.changeoverCost()));
+        if (current == null
+                || head.job.document().paperSize() == current
+                || nanoTime.getAsLong() - head.queuedAt >= maxSkipNanos
+                || !printer.supportedPaperSizes().contains(current)) {
+            return oldest;
+        }
+        var same = queues.get(current);
+        return same.isEmpty() ? oldest : same;
+    }
+
+    @Override
+    void taken(Printer printer, Entry entry) {
+        var paperSize = entry.job.document().paperSize();
+        lastPaperSizes.put(printer, paperSize);
+        var oldest = oldestOf(printer.supportedPaperSizes());
+        if (oldest != null && oldest.peek().sequence < entry.sequence) {
+            // single writer under the lock
+            changeoversSaved++;
+            changeoverNanosSaved = Durations.saturatedAdd(changeoverNanosSaved,
+                    Durations.saturatedNanos(printer.changeoverCost()));
+        }
+    }
+
+    private PaperSize currentPaperSize(Printer printer) {
+        var current = printer.currentPaperSize();
+        return current != null ? current : lastPaperSizes.get(printer);
+    }
+}
@@ -4,19 +4,50 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CancellationException;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
 /**
+ * Dispatches documents from one shared queue to a pool of printers.
+ * Every printer is served by its own worker thread that calls {@link Printer#print} directly,
+ * so up to {@code printers.size()} documents are printed at the same time.
+ * Workers may run on virtual threads, see {@link Builder#virtualThreads()}.
+ * The order in which printers take documents is defined by {@link PrintQueue}.
+ * <p>
+ * Queued and printing jobs are indexed by id, finished jobs are kept in {@link PrintHistory}.
+ * Optionally submitted jobs are journaled to survive a crash, see {@link PrintJournal}.
+ * <p>
+ * {@link #stopAsync(StopMode)} only signals workers, the last exiting worker collects not printed documents
+ * from the queue, so the cost of the stop depends on pending documents and not on the history.
+ *
  * @author mshherbakov
  * @since 23.09.2019
  */
@@ -24,99 +55,476 @@ public class DefaultPrintDispatcher implements PrintDispatcher {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultPrintDispatcher.class);
     
-    private final BlockingQueue<Document> printQueue = new LinkedBlockingQueue<>();
-    private final ConcurrentMap<String, PrintAction> actions = new ConcurrentHashMap<>();
+    private final PrintQueue printQueue;
+    private final ConcurrentMap<Long, PrintJob> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PrintJob> lastByTypeName = new ConcurrentHashMap<>();
+    private final PrintHistory history;
+    private final PrintStatistics statistics = new PrintStatistics();
+    private final PrintMetrics metrics;
+    private final LongSupplier nanoTime;
+    private final PrintEvents events;
+    private final Admission admission;
+    private final PrintCoalescing coalescing;
+    private final PrintJob.Listener listener = new PrintJob.Listener() {
+        @Override
+        public void statusChanged(PrintJob job, PrintJob.Status previous, PrintJob.Status status) {
+            DefaultPrintDispatcher.this.statusChanged(job, previous, status);
+        }
+
+        @Override
+        public void cancelled(PrintJob job) {
+            DefaultPrintDispatcher.this.cancelled(job);
+        }
+    };
+    private final Journal journal;
+    private final List<PrintJob> recovered;
+
+    private final Set<PaperSize> supportedPaperSizes = EnumSet.noneOf(PaperSize.class);
+    private final List<Worker> workers;
 
-    private final Thread background;
+    private volatile boolean running = true;
+    private final LongAdder submitting = new LongAdder();
+    // parked in awaitSubmissions until the last submission is finished
+    private volatile Thread terminator;
+    private final Queue<Document> abortedOnStop = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger aliveWorkers = new AtomicInteger();
+    private final AtomicBoolean terminating = new AtomicBoolean();
+    private final CompletableFuture<List<Document>> termination = new CompletableFuture<>();
 
     public DefaultPrintDispatcher(Printer printer) {
-        background = new Thread(() -> this.dispatch(printer));
-        background.start();
+        this(List.of(printer));
     }
 
-    private void dispatch(Printer printer) {
-        var printTask = Executors.newSingleThreadExecutor();
-        while (!Thread.interrupted()) {
-            Document document;
-            try {
-                log.info("waiting for new document...");
-                document = printQueue.take();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
-            }
+    /**
+     * Uses {@link PrintQueue#fifo()}, or {@link PrintQueue#byPaperSize()} if the printers support different paper sizes.
+     */
+    public DefaultPrintDispatcher(Collection<? extends Printer> printers) {
+        this(builder().printers(printers));
+    }
 
-            var future = printTask.submit(() -> {
-                log.info("printing: {}", document);
-                printer.print(document);
-                return document;
-            });
-            PrintAction action = new PrintAction(document, future);
-            actions.put(document.typeName(), action);
-            log.info("put action: {}", action);
+    public DefaultPrintDispatcher(Collection<? extends Printer> printers, PrintQueue printQueue) {
+        this(builder().printers(printers).queue(printQueue));
+    }
 
-            try {
-                action.waitForFinish();
-                log.info("finish: {}", action);
-            } catch (CancellationException | ExecutionException ignored) {
-                // cancel current document and continue printing
-                log.info("cancel: {}", action);
-                printer.stop();
-            } catch (InterruptedException e) {
-                log.info("interrupt: {}", action);
-                Thread.currentThread().interrupt();
-            }
+    private DefaultPrintDispatcher(Builder builder) {
+        if (builder.printers.isEmpty()) {
+            throw new IllegalArgumentException("at least one printer is required");
+        }
+
+        this.printQueue = queueFor(builder.printers, builder.printQueue);
+        this.history = new PrintHistory(builder.retention, builder.indexPrintedDocs, builder.nanoTime);
+        this.metrics = builder.metrics;
+        this.nanoTime = builder.nanoTime;
+        this.events = new PrintEvents(builder.eventExecutor, builder.eventBufferCapacity, metrics, nanoTime);
+        this.admission = Admission.of(builder.admission);
+        this.coalescing = builder.coalescing;
+        this.journal = builder.journal != null ? new FileJournal(builder.journal) : Journal.none();
+        var threadFactory = builder.threadFactory != null ? builder.threadFactory : WorkerThreads.platform();
+        workers = new ArrayList<>(builder.printers.size());
+        for (Printer printer : builder.printers) {
+            supportedPaperSizes.addAll(printer.supportedPaperSizes());
+            workers.add(new Worker(printer, threadFactory));
+        }
+        printQueue.attach(builder.printers);
+        this.recovered = recover();
+        aliveWorkers.set(workers.size());
+        workers.forEach(worker -> worker.thread.start());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A queue that ignores paper sizes would give a printer documents it can not print,
+     * so it is allowed only if every printer supports the same paper sizes.
+     */
+    private static PrintQueue queueFor(List<Printer> printers, PrintQueue queue) {
+        var paperSizes = printers.get(0).supportedPaperSizes();
+        boolean sameForAll = printers.stream().allMatch(printer -> printer.supportedPaperSizes().equals(paperSizes));
+        if (queue == null) {
+            return sameForAll ? PrintQueue.fifo() : PrintQueue.byPaperSize();
+        }
+        if (!sameForAll && !queue.respectsPaperSizes()) {
+            throw new IllegalArgumentException("printers support different paper sizes, but the queue ignores them");
+        }
+        return queue;
+    }
+
+    /**
+     * Queues documents left in the journal by the previous dispatcher.
+     */
+    private List<PrintJob> recover() {
+        var documents = journal.recover();
+        documents.forEach(this::checkPaperSize);
+        var jobs = new ArrayList<PrintJob>(documents.size());
+        for (Document document : documents) {
+            jobs.add(new PrintJob(document, nanoTime.getAsLong(), listener));
+        }
+
+        journal.start(jobs);
+        admission.force(jobs);
+        jobs.forEach(this::index);
+        printQueue.putAll(jobs);
+        metrics.queued(jobs.size());
+        if (!jobs.isEmpty()) {
+            log.info("recovered {} documents from the journal", jobs.size());
+        }
+        return List.copyOf(jobs);
+    }
+
+    /**
+     * @return Jobs queued on creation from the journal, see {@link Builder#journal(PrintJournal)}
+     */
+    public List<PrintJob> recovered() {
+        return recovered;
+    }
+
+    /**
+     * Moves the job to the history. The job is completed last,
+     * so whoever waits for it sees the history and statistics already updated.
+     */
+    private void finish(PrintJob job, boolean printed) {
+        if (printed) {
+            statistics.record(job.document().printDuration());
+        }
+        journal.finished(job, printed);
+        record(job, printed);
+        if (!printed && job.isAbortedOnStop()) {
+            abortedOnStop.add(job.document());
+        }
+        job.finish(printed);
+    }
+
+    private void statusChanged(PrintJob job, PrintJob.Status previous, PrintJob.Status status) {
+        if (previous == PrintJob.Status.QUEUED) {
+            admission.release(job);
+        }
+        events.publish(job, status);
+    }
+
+    /**
+     * Every cancel, by the dispatcher or by {@link PrintJob#cancel()}, is journalled and counted here once.
+     */
+    private void cancelled(PrintJob job) {
+        journal.cancelled(job);
+        metrics.cancelled();
+        if (log.isDebugEnabled()) {
+            log.debug("cancel job: {}", job);
         }
-        printTask.shutdownNow();
     }
 
+    private void record(PrintJob job, boolean printed) {
+        history.add(new FinishedJob(job.id(), job.document(), printed, nanoTime.getAsLong()));
+        pending.remove(job.id());
+        lastByTypeName.remove(job.document().typeName(), job);
+    }
+
+    /**
+     * Aborts documents being printed and waits until workers are finished.
+     *
+     * @see #stopAsync(StopMode)
+     */
     @Override
     public List<Document> stop() {
-        cancelAllActiveTask();
-        background.interrupt();
-        return notPrintedDocuments();
+        try {
+            return stopAsync(StopMode.ABORT_PRINTING).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Rejects new documents and signals workers to stop without waiting for them.
+     * The dispatcher is terminated when every worker has finished its document, if any,
+     * and queued documents are collected, see {@link #awaitTermination(Duration)}.
+     * <p>
+     * A repeated call returns the same result, but may escalate {@link StopMode#FINISH_PRINTING}
+     * to {@link StopMode#ABORT_PRINTING} if the documents take too long.
+     *
+     * @return Documents that are not printed: aborted ones and then ones that have not been taken from the queue
+     */
+    public CompletableFuture<List<Document>> stopAsync(StopMode mode) {
+        running = false;
+        admission.close();
+        if (mode == StopMode.ABORT_PRINTING) {
+            workers.forEach(Worker::abortCurrent);
+            workers.forEach(worker -> worker.thread.interrupt());
+        } else {
+            workers.forEach(Worker::interruptIfIdle);
+        }
+        if (aliveWorkers.get() == 0) {
+            terminate();
+        }
+        return termination.copy();
+    }
+
+    /**
+     * @return {@code false} if the dispatcher is not terminated in time
+     * @throws IllegalStateException if the dispatcher is not stopping
+     */
+    public boolean awaitTermination(Duration timeout) throws InterruptedException {
+        if (running) {
+            throw new IllegalStateException("dispatcher is not stopping");
+        }
+        try {
+            termination.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // the failure is reported by the stop
+        }
+        return true;
+    }
+
+    public boolean isTerminated() {
+        return termination.isDone();
+    }
+
+    /**
+     * Called by every worker on exit, the last one terminates the dispatcher.
+     */
+    private void workerExited() {
+        if (aliveWorkers.decrementAndGet() == 0 && !running) {
+            terminate();
+        }
     }
 
-    private void cancelAllActiveTask() {
-        actions.values().stream()
-               .filter(PrintAction::isActive)
-               .forEach(PrintAction::abort);
+    /**
+     * After all workers are finished no document can be taken from the queue
+     * or become active, so the list of not printed documents is complete.
+     */
+    private void terminate() {
+        if (!terminating.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            awaitSubmissions();
+            var notPrinted = notPrintedDocuments();
+            journal.close();
+            events.close();
+            if (log.isDebugEnabled()) {
+                log.debug("terminated, {} documents are not printed", notPrinted.size());
+            }
+            termination.complete(notPrinted);
+        } catch (RuntimeException | Error e) {
+            termination.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Submission that has seen the dispatcher running is finished before the queue is drained,
+     * so a batch is either queued and returned by {@link #stop()} as a whole or rejected.
+     * A submission may wait for the journal, so the terminating thread parks until
+     * {@link #endSubmission()} wakes it instead of spinning.
+     */
+    private void awaitSubmissions() {
+        terminator = Thread.currentThread();
+        boolean interrupted = false;
+        while (submitting.sum() != 0) {
+            LockSupport.park(this);
+            interrupted |= Thread.interrupted();
+        }
+        terminator = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
+    /**
+     * Documents aborted by this stop and then documents that have not been taken from the queue.
+     * Documents cancelled earlier by {@link #cancel} were already returned to the caller.
+     */
     private List<Document> notPrintedDocuments() {
-        var result = actions
-                .values().stream()
-                .filter(PrintAction::isAborted)
-                .map(PrintAction::document)
-                .collect(Collectors.toList());
+        var result = new ArrayList<Document>();
+        Document aborted;
+        while ((aborted = abortedOnStop.poll()) != null) {
+            result.add(aborted);
+        }
 
-        printQueue.drainTo(result);
+        var notTaken = new ArrayList<PrintJob>();
+        printQueue.drainTo(notTaken);
+        metrics.dropped(notTaken.size());
+        for (PrintJob job : notTaken) {
+            if (job.abortQueued()) {
+                result.add(job.document());
+            }
+            journal.cancelled(job);
+            record(job, false);
+        }
 
         return result;
     }
 
+    /**
+     * @throws java.io.UncheckedIOException if the document can not be written to the journal,
+     *                                      then it is not queued, or if the journal can not be forced
+     *                                      to the disk, then the document is queued nevertheless
+     */
     @Override
-    public void print(Document document) {
-        printQueue.add(document);
+    public PrintJob print(Document document) {
+        checkPaperSize(document);
+        var job = new PrintJob(document, nanoTime.getAsLong(), listener);
+        var jobs = List.of(job);
+        admit(jobs);
+        long ticket;
+        beginSubmission(jobs);
+        try {
+            index(job);
+            try {
+                ticket = journal.submitted(job);
+            } catch (RuntimeException | Error e) {
+                unadmit(jobs);
+                throw e;
+            }
+            events.publish(job, PrintJob.Status.QUEUED);
+            printQueue.put(job);
+            metrics.queued(1);
+        } finally {
+            endSubmission();
+        }
+        journal.awaitDurable(ticket);
+        return job;
+    }
+
+    /**
+     * Puts all documents into the queue at once.
+     * If any document can not be printed, none of them is queued.
+     */
+    @Override
+    public List<PrintJob> printAll(Collection<? extends Document> documents) {
+        documents.forEach(this::checkPaperSize);
+        var jobs = new ArrayList<PrintJob>(documents.size());
+        long now = nanoTime.getAsLong();
+        for (Document document : documents) {
+            jobs.add(new PrintJob(document, now, listener));
+        }
+        admit(jobs);
+
+        long ticket;
+        beginSubmission(jobs);
+        try {
+            jobs.forEach(this::index);
+            try {
+                ticket = journal.submitted(jobs);
+            } catch (RuntimeException | Error e) {
+                unadmit(jobs);
+                throw e;
+            }
+            for (PrintJob job : jobs) {
+                events.publish(job, PrintJob.Status.QUEUED);
+            }
+            printQueue.putAll(jobs);
+            metrics.queued(jobs.size());
+        } finally {
+            endSubmission();
+        }
+        journal.awaitDurable(ticket);
+        return jobs;
+    }
+
+    private void checkPaperSize(Document document) {
+        if (!supportedPaperSizes.contains(document.paperSize())) {
+            throw new IllegalArgumentException("no printer supports paper size " + document.paperSize());
+        }
+    }
+
+    /**
+     * Waits for place in the queue before the submission begins, so a waiting producer never delays {@link #stop()}.
+     */
+    private void admit(List<PrintJob> jobs) {
+        List<PrintJob> shed;
+        try {
+            shed = admission.admit(jobs);
+        } catch (RejectedExecutionException e) {
+            metrics.rejected(jobs.size());
+            throw e;
+        }
+        if (shed.isEmpty()) {
+            return;
+        }
+        for (PrintJob job : shed) {
+            journal.cancelled(job);
+        }
+        metrics.shed(shed.size());
+        if (log.isDebugEnabled()) {
+            log.debug("shed {} queued documents to admit {}", shed.size(), jobs.size());
+        }
+    }
+
+    /**
+     * Must be paired with {@link #endSubmission()}
+     */
+    private void beginSubmission(List<PrintJob> admitted) {
+        submitting.increment();
+        if (!running) {
+            endSubmission();
+            admitted.forEach(admission::release);
+            throw new RejectedExecutionException("dispatcher is stopped");
+        }
+    }
+
+    /**
+     * The terminator is published before it reads {@link #submitting}, and it is read here
+     * after the decrement, so either it sees the submission finished or it is woken.
+     */
+    private void endSubmission() {
+        submitting.decrement();
+        if (!running) {
+            var thread = terminator;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Forgets jobs that are not queued because the journal has failed to record them.
+     */
+    private void unadmit(List<PrintJob> jobs) {
+        for (PrintJob job : jobs) {
+            pending.remove(job.id());
+            lastByTypeName.remove(job.document().typeName(), job);
+            admission.release(job);
+        }
+    }
+
+    private void index(PrintJob job) {
+        pending.put(job.id(), job);
+        lastByTypeName.put(job.document().typeName(), job);
     }
 
     @Override
     public Document cancel(String typeName) {
-        log.info("attempt to cancel doc: {}", typeName);
-        actions.computeIfPresent(typeName, (__, action) -> {
-            action.abort();
-            log.info("cancel action: {}", action);
-            return action;
-        });
-        var action = actions.getOrDefault(typeName, EMPTY_ACTION);
-        return action.document();
+        var job = lastByTypeName.get(typeName);
+        return job != null && job.cancel() ? job.document() : null;
+    }
+
+    @Override
+    public boolean cancel(long jobId) {
+        var job = pending.get(jobId);
+        return job != null && job.cancel();
+    }
+
+    @Override
+    public PrintJob.Status status(long jobId) {
+        var job = pending.get(jobId);
+        if (job != null) {
+            return job.status();
+        }
+        var finished = history.get(jobId);
+        return finished != null ? finished.status() : null;
     }
 
     @Override
     public List<Document> printedDocs() {
-        return actions.values().stream()
-                      .filter(PrintAction::isPrinted)
-                      .map(PrintAction::document)
+        return history.stream()
+                      .filter(FinishedJob::isPrinted)
+                      .map(FinishedJob::document)
                       .collect(Collectors.toList());
     }
 
@@ -128,96 +536,565 @@ public class DefaultPrintDispatcher implements PrintDispatcher {
     }
 
     @Override
-    public Duration calcAvgPrintDuration() {
-        double avg = printedDocs()
-                .stream()
-                .mapToLong(doc -> doc.printDuration().toSeconds())
-                .average()
-                .orElse(0);
+    public List<Document> printedDocs(PrintedQuery query) {
+        return history.printed(query);
+    }
 
-        long nanos = convertSecondsToNanos(avg);
-        return Duration.ofNanos(nanos);
+    /**
+     * @return Page of printed jobs, e.g. to merge pages of several dispatchers
+     */
+    List<FinishedJob> printedJobs(PrintedQuery query) {
+        return history.printedJobs(query);
     }
 
-    private static final long NANOS_IN_SECOND = 1_000_000_000;
+    /**
+     * Unlike {@link #printedDocs()} takes into account documents already forgotten by the history.
+     */
+    @Override
+    public Duration calcAvgPrintDuration() {
+        return statistics.mean();
+    }
 
-    private long convertSecondsToNanos(double seconds) {
-        return (long) (seconds * NANOS_IN_SECOND);
+    @Override
+    public PrintStatistics statistics() {
+        return statistics;
     }
 
-    // for test only
-    PrintAction action(String typeName) {
-        return actions.getOrDefault(typeName, EMPTY_ACTION);
+    @Override
+    public Flow.Publisher<PrintEvent> events() {
+        return events.publisher();
     }
 
-    static class PrintAction {
-        private final Document document;
-        private final Future<Document> future;
+    /**
+     * Takes jobs from the queue and prints them right on its own thread.
+     * Per-job logging is debug level and guarded, so with the default info level
+     * the loop neither formats messages nor builds {@link PrintJob#toString()}.
+     * A print is aborted by interrupting the thread and {@link Printer#stop()},
+     * both are done under the lock only while the job is current,
+     * so the abort never affects the next job.
+     * In a run the current job is the one the printer has not reported yet.
+     */
+    private class Worker implements Runnable, PrintJob.Abort {
+        private final Printer printer;
+        private final Thread thread;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private PrintJob current;
+        private List<PrintJob> run;
+        // index of the current job in the run
+        private int next;
+        // cancelled jobs of the run that the printer has not reached yet
+        private final Set<PrintJob> skipped = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean aborted;
+
+        private Worker(Printer printer, ThreadFactory threadFactory) {
+            this.printer = printer;
+            this.thread = threadFactory.newThread(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                loop();
+            } finally {
+                workerExited();
+            }
+        }
+
+        private void loop() {
+            while (running) {
+                PrintJob job;
+                try {
+                    if (log.isTraceEnabled()) {
+                        log.trace("waiting for new document...");
+                    }
+                    job = printQueue.take(printer);
+                } catch (InterruptedException e) {
+                    // dispatcher is stopping
+                    continue;
+                }
+
+                if (!job.start()) {
+                    skip(job);
+                    continue;
+                }
+
+                if (!begin(job)) {
+                    metrics.dropped(1);
+                    job.abortOnStop();
+                    finish(job, false);
+                    continue;
+                }
+                long startedAt = nanoTime.getAsLong();
+                metrics.started(printer, startedAt - job.submittedAt());
+                journal.started(job);
+                job.onAbort(this);
+                var run = coalescing.isEnabled() ? coalesce(job) : null;
+                if (run != null) {
+                    printRun(run, startedAt);
+                    continue;
+                }
+                boolean printed = print(job);
+                printed = end() && printed;
+                metrics.finished(printer, nanoTime.getAsLong() - startedAt, printed);
+                finish(job, printed);
+            }
+        }
+
+        private void skip(PrintJob job) {
+            if (log.isDebugEnabled()) {
+                log.debug("skip cancelled: {}", job);
+            }
+            metrics.dropped(1);
+            journal.cancelled(job);
+            record(job, false);
+        }
 
-        private PrintAction(Document document, Future<Document> future) {
-            this.document = document;
-            this.future = future;
+        /**
+         * Takes queued documents that can be printed in one run with the first one.
+         *
+         * @return Started jobs of the run beginning with the first one or {@code null} if nothing is merged
+         */
+        private List<PrintJob> coalesce(PrintJob first) {
+            List<PrintJob> run = null;
+            long work = Durations.workNanos(first.document());
+            int size = 1;
+            while (size < coalescing.maxDocs()) {
+                long runWork = work;
+                var next = printQueue.pollIf(printer, candidate ->
+                        PrintCoalescing.compatible(first.document(), candidate.document())
+                                && Durations.saturatedAdd(runWork, Durations.workNanos(candidate.document())) <= coalescing.maxWorkNanos());
+                if (next == null) {
+                    break;
+                }
+                if (!next.start()) {
+                    skip(next);
+                    continue;
+                }
+                if (run == null) {
+                    run = new ArrayList<>();
+                    run.add(first);
+                }
+                run.add(next);
+                size++;
+                work = Durations.saturatedAdd(work, Durations.workNanos(next.document()));
+                metrics.started(printer, nanoTime.getAsLong() - next.submittedAt());
+                journal.started(next);
+            }
+            if (run == null) {
+                return null;
+            }
+
+            lock.lock();
+            try {
+                this.run = run;
+                next = 0;
+            } finally {
+                lock.unlock();
+            }
+            for (int i = 1; i < run.size(); i++) {
+                run.get(i).onAbort(this);
+            }
+            return run;
         }
 
-        public boolean isPrinted() {
-            return future.isDone() && !future.isCancelled();
+        /**
+         * Every document is finished as soon as the printer reports it. If the current document is
+         * aborted or fails, or the printer reaches a document cancelled earlier, the printer is stopped
+         * and the rest of the run is printed in a new run.
+         */
+        private void printRun(List<PrintJob> run, long startedAt) {
+            var progress = new Progress(startedAt);
+            var rest = run;
+            while (true) {
+                boolean completed = printAll(rest, progress);
+                completed = end() && completed;
+                int from = next;
+                if (from == rest.size()) {
+                    return;
+                }
+                if (!completed) {
+                    var failed = rest.get(from++);
+                    skipped.remove(failed);
+                    progress.finish(failed, false);
+                }
+
+                var remaining = new ArrayList<PrintJob>(rest.size() - from);
+                for (PrintJob job : rest.subList(from, rest.size())) {
+                    if (skipped.remove(job)) {
+                        progress.finish(job, false);
+                    } else {
+                        remaining.add(job);
+                    }
+                }
+                if (remaining.isEmpty()) {
+                    return;
+                }
+                // the printer has returned without reporting the rest, so it is printed, or the dispatcher is stopping
+                if (completed || !resume(remaining)) {
+                    for (PrintJob job : remaining) {
+                        if (!completed) {
+                            job.abortOnStop();
+                        }
+                        progress.finish(job, completed);
+                    }
+                    return;
+                }
+                rest = remaining;
+            }
         }
 
-        public boolean isAborted() {
-            return future.isCancelled();
+        private boolean printAll(List<PrintJob> run, Progress progress) {
+            var documents = new ArrayList<Document>(run.size());
+            run.forEach(job -> documents.add(job.document()));
+            try {
+                if (log.isDebugEnabled()) {
+                    log.debug("printing run of {}: {}", run.size(), run);
+                }
+                printer.printAll(documents, progress);
+                if (log.isDebugEnabled()) {
+                    log.debug("finish run of {}", run.size());
+                }
+                return true;
+            } catch (InterruptedException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("cancel run of {}", run.size());
+                }
+                metrics.interrupted();
+                return false;
+            } catch (RuntimeException e) {
+                log.warn("printer failed in run: {}", run, e);
+                printer.stop();
+                return false;
+            }
         }
 
-        public boolean isActive() {
-            return !future.isDone();
+        private boolean print(PrintJob job) {
+            try {
+                if (log.isDebugEnabled()) {
+                    log.debug("printing: {}", job);
+                }
+                printer.print(job.document());
+                if (log.isDebugEnabled()) {
+                    log.debug("finish: {}", job);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("cancel: {}", job);
+                }
+                metrics.interrupted();
+                return false;
+            } catch (RuntimeException e) {
+                log.warn("printer failed: {}", job, e);
+                printer.stop();
+                return false;
+            }
         }
 
-        public Document document() {
-            return document;
+        /**
+         * @return {@code false} if the dispatcher is stopping and the job must not be printed
+         */
+        private boolean begin(PrintJob job) {
+            lock.lock();
+            try {
+                if (!running) {
+                    return false;
+                }
+                current = job;
+                aborted = false;
+                return true;
+            } finally {
+                lock.unlock();
+            }
         }
 
-        public void abort() {
-            future.cancel(true);
+        /**
+         * Starts a new run of the rest of the aborted one.
+         *
+         * @return {@code false} if the dispatcher is stopping and the rest must not be printed
+         */
+        private boolean resume(List<PrintJob> rest) {
+            lock.lock();
+            try {
+                if (!running) {
+                    return false;
+                }
+                current = rest.get(0);
+                run = rest;
+                next = 0;
+                aborted = false;
+                return true;
+            } finally {
+                lock.unlock();
+            }
         }
 
-        public void waitForFinish() throws ExecutionException, InterruptedException {
-            future.get();
+        /**
+         * @return {@code false} if the current job was aborted
+         */
+        private boolean end() {
+            lock.lock();
+            try {
+                current = null;
+                run = null;
+                // clear interruption caused by the abort
+                Thread.interrupted();
+                return !aborted;
+            } finally {
+                lock.unlock();
+            }
         }
 
         @Override
-        public String toString() {
-            return String.format("[status: %s, doc: %s]",
-                    isActive() ? "active" : isAborted() ? "aborted" : "done",
-                    document);
+        public void abort(PrintJob job) {
+            lock.lock();
+            try {
+                if (current != job) {
+                    if (run != null && indexOf(run, job) > next) {
+                        skipped.add(job);
+                    }
+                    return;
+                }
+                if (aborted) {
+                    return;
+                }
+                aborted = true;
+                metrics.aborted();
+                thread.interrupt();
+                printer.stop();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wakes the worker waiting for a document, but lets the current document be printed.
+         */
+        private void interruptIfIdle() {
+            lock.lock();
+            try {
+                if (current == null && run == null) {
+                    thread.interrupt();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void abortCurrent() {
+            lock.lock();
+            try {
+                if (current != null) {
+                    current.abortOnStop();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int indexOf(List<PrintJob> run, PrintJob job) {
+            for (int i = 0; i < run.size(); i++) {
+                if (run.get(i) == job) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Finishes jobs of the run in order as the printer reports printed documents.
+         * Nothing is reported as printed after the run is aborted.
+         */
+        private class Progress implements Consumer<Document> {
+            private long lastAt;
+
+            private Progress(long startedAt) {
+                this.lastAt = startedAt;
+            }
+
+            @Override
+            public void accept(Document document) {
+                PrintJob job;
+                boolean printed;
+                lock.lock();
+                try {
+                    if (aborted) {
+                        // the printer has swallowed the interruption, so the rest of the run is still aborted
+                        thread.interrupt();
+                        return;
+                    }
+                    if (run == null || next == run.size()) {
+                        return;
+                    }
+                    job = run.get(next++);
+                    printed = !skipped.remove(job);
+                    current = next < run.size() ? run.get(next) : null;
+                    if (current != null && skipped.contains(current)) {
+                        // the printer must not start the cancelled document, printRun resumes the rest without it
+                        aborted = true;
+                        metrics.aborted();
+                        thread.interrupt();
+                        printer.stop();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                finish(job, printed);
+            }
+
+            private void finish(PrintJob job, boolean printed) {
+                long now = nanoTime.getAsLong();
+                metrics.finished(printer, now - lastAt, printed);
+                lastAt = now;
+                DefaultPrintDispatcher.this.finish(job, printed);
+            }
         }
     }
 
-    private static final PrintAction EMPTY_ACTION = new PrintAction(null, null) {
-        @Override
-        public boolean isPrinted() {
-            return false;
+    public enum StopMode {
+        /**
+         * Documents being printed are aborted and returned with queued ones.
+         */
+        ABORT_PRINTING,
+        /**
+         * Documents being printed are finished, only queued ones are returned.
+         */
+        FINISH_PRINTING
+    }
+
+    public static class Builder {
+        private final List<Printer> printers = new ArrayList<>();
+        // chosen by the paper sizes of printers if null
+        private PrintQueue printQueue = null;
+        private HistoryRetention retention = HistoryRetention.unlimited();
+        private boolean indexPrintedDocs = false;
+        private ThreadFactory threadFactory = null;
+        private PrintMetrics metrics = PrintMetrics.none();
+        private PrintJournal journal = null;
+        private LongSupplier nanoTime = System::nanoTime;
+        private Executor eventExecutor = ForkJoinPool.commonPool();
+        private int eventBufferCapacity = Flow.defaultBufferSize();
+        private PrintAdmission admission = PrintAdmission.unbounded();
+        private PrintCoalescing coalescing = PrintCoalescing.disabled();
+
+        private Builder() {
         }
 
-        @Override
-        public boolean isAborted() {
-            return false;
+        public Builder printer(Printer printer) {
+            printers.add(printer);
+            return this;
         }
 
-        @Override
-        public boolean isActive() {
-            return false;
+        public Builder printers(Collection<? extends Printer> printers) {
+            this.printers.addAll(printers);
+            return this;
         }
 
-        @Override
-        public Document document() {
-            return null;
+        /**
+         * By default {@link PrintQueue#fifo()}, or {@link PrintQueue#byPaperSize()} if printers support
+         * different paper sizes, then the queue must {@link PrintQueue#respectsPaperSizes() respect} them.
+         */
+        public Builder queue(PrintQueue printQueue) {
+            this.printQueue = printQueue;
+            return this;
         }
 
-        @Override
-        public void abort() {
+        /**
+         * By default finished documents are never forgotten.
+         */
+        public Builder history(HistoryRetention retention) {
+            this.retention = retention;
+            return this;
         }
 
-        @Override
-        public void waitForFinish() {
+        /**
+         * Keeps printed documents of the history indexed by every order of {@link PrintedQuery},
+         * so a page costs its size and not the size of the history, but every printed document
+         * costs a few more insertions and removals. By default a page is selected by a scan of the history.
+         */
+        public Builder indexPrintedDocs() {
+            this.indexPrintedDocs = true;
+            return this;
         }
-    };
+
+        /**
+         * Factory of worker threads, one thread per printer.
+         * By default workers are platform threads.
+         */
+        public Builder threadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Runs workers on virtual threads, so thousands of dispatchers
+         * do not hold thousands of platform threads while printers are idle.
+         * Printers must not block inside {@code synchronized} to release the carrier thread.
+         *
+         * @throws UnsupportedOperationException if the runtime is older than Java 21
+         */
+        public Builder virtualThreads() {
+            return threadFactory(WorkerThreads.virtual());
+        }
+
+        /**
+         * By default events are not recorded.
+         */
+        public Builder metrics(PrintMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Journals submitted documents and queues on creation documents left in the journal
+         * by the previous dispatcher. By default documents are kept only in memory.
+         * The dispatcher closes the journal on {@link DefaultPrintDispatcher#stop()}.
+         *
+         * @throws java.io.UncheckedIOException on {@link #build()} if the journal can not be read
+         */
+        public Builder journal(PrintJournal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        /**
+         * Clock in {@link System#nanoTime()} scale that measures waiting and printing
+         * and the age of finished documents, {@link System#nanoTime()} by default.
+         */
+        public Builder clock(LongSupplier nanoTime) {
+            this.nanoTime = nanoTime;
+            return this;
+        }
+
+        /**
+         * Delivery of {@link #events()}: the executor runs subscribers, and every subscriber
+         * buffers at most {@code bufferCapacity} events, by default the common pool and {@link Flow#defaultBufferSize()}.
+         */
+        public Builder events(Executor executor, int bufferCapacity) {
+            this.eventExecutor = executor;
+            this.eventBufferCapacity = bufferCapacity;
+            return this;
+        }
+
+        /**
+         * By default every document is admitted into the queue.
+         */
+        public Builder admission(PrintAdmission admission) {
+            this.admission = admission;
+            return this;
+        }
+
+        /**
+         * By default every document is printed separately.
+         */
+        public Builder coalescing(PrintCoalescing coalescing) {
+            this.coalescing = coalescing;
+            return this;
+        }
+
+        public DefaultPrintDispatcher build() {
+            return new DefaultPrintDispatcher(this);
+        }
+    }
 }
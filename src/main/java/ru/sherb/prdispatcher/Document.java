@@ -1,6 +1,7 @@
 package ru.sherb.prdispatcher;
 
 import java.time.Duration;
+import java.time.Instant;
 
 /**
  * All classes that implements this interface may be print on {@link PrintDispatcher}
@@ -24,4 +25,22 @@ public interface Document {
      * @return Estimated print time
      */
     Duration printDuration();
+
+    /**
+     * Used only by {@link PrintQueue#byPriority}
+     *
+     * @return Document with greater priority is printed first, 0 by default
+     */
+    default int priority() {
+        return 0;
+    }
+
+    /**
+     * Used only by {@link PrintQueue#byPriority} and {@link PrintQueue#shortestJobFirst}
+     *
+     * @return Time when the document must be printed or {@code null} if there is no deadline
+     */
+    default Instant deadline() {
+        return null;
+    }
 }
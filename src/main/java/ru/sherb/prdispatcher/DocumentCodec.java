@@ -0,0 +1,23 @@
+package ru.sherb.prdispatcher;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes documents to the {@link PrintJournal} and reads them back after a restart.
+ */
+public interface DocumentCodec {
+
+    /**
+     * Codec that keeps only the properties of {@link Document},
+     * so a document is restored as another implementation with the same properties.
+     */
+    static DocumentCodec standard() {
+        return StandardDocumentCodec.INSTANCE;
+    }
+
+    void encode(Document document, DataOutput out) throws IOException;
+
+    Document decode(DataInput in) throws IOException;
+}
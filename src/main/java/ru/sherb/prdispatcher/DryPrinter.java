@@ -1,36 +1,208 @@
 package ru.sherb.prdispatcher;
 
-import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Simulated printer that prints a document for its {@link Document#printDuration()}.
+ * The print waits for the deadline measured with {@link System#nanoTime()},
+ * so durations are accurate below a millisecond and a zero duration returns at once.
+ * <p>
+ * For load tests time may be accelerated with {@link #timeScale(double)}, durations may be
+ * randomly spread with {@link #jitter(double)}, and prints may fail with {@link #failureRate(double)}.
+ * Randomness is reproducible with {@link #seed(long)}. Configure the printer before it is used.
+ * The same printer may be simulated in virtual time by {@link PrintSimulation}.
+ * <p>
+ * The printer waits on a {@link ReentrantLock} rather than a monitor, so with
+ * {@link DefaultPrintDispatcher.Builder#virtualThreads()} thousands of simulated printers
+ * share a few carrier threads.
+ *
  * @author maksim
  * @since 23.09.2019
  */
 public class DryPrinter implements Printer {
 
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stopped = lock.newCondition();
+
+    private double timeScale = 1;
+    private double jitter = 0;
+    private double failureRate = 0;
+    private Random random = new Random();
+
     private Document printingDocument;
     private boolean stop = false;
 
+    private VirtualScheduler scheduler;
+    private VirtualScheduler.Timer timer;
+
+    /**
+     * @param timeScale How many times faster than real time documents are printed
+     */
+    public DryPrinter timeScale(double timeScale) {
+        if (!(timeScale > 0)) {
+            throw new IllegalArgumentException("time scale must be positive: " + timeScale);
+        }
+        this.timeScale = timeScale;
+        return this;
+    }
+
+    /**
+     * @param jitter Print duration is uniformly spread by up to this fraction in both directions,
+     *               from 0 to 1
+     */
+    public DryPrinter jitter(double jitter) {
+        if (!(jitter >= 0 && jitter <= 1)) {
+            throw new IllegalArgumentException("jitter must be from 0 to 1: " + jitter);
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * A failed print throws {@link IllegalStateException} at a random moment of its duration.
+     *
+     * @param failureRate Probability of a print to fail, from 0 to 1
+     */
+    public DryPrinter failureRate(double failureRate) {
+        if (!(failureRate >= 0 && failureRate <= 1)) {
+            throw new IllegalArgumentException("failure rate must be from 0 to 1: " + failureRate);
+        }
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    public DryPrinter seed(long seed) {
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Prints in virtual time of the scheduler instead of the real one.
+     */
+    DryPrinter scheduler(VirtualScheduler scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
     @Override
-    public synchronized void print(Document document) throws InterruptedException {
-        stop = false;
-        printingDocument = document;
+    public void print(Document document) throws InterruptedException {
+        if (scheduler != null) {
+            printVirtually(document);
+            return;
+        }
+
+        lock.lock();
+        try {
+            stop = false;
+            printingDocument = document;
 
-        var printDuration = printingDocument.printDuration();
-        var deadline = Instant.now().plus(printDuration);
+            var plan = plan(document);
+            long remaining = plan.nanos;
+            while (remaining > 0 && !stop) {
+                remaining = stopped.awaitNanos(remaining);
+            }
+            if (plan.fails && !stop) {
+                throw failure(document);
+            }
+        } finally {
+            printingDocument = null;
+            lock.unlock();
+        }
+    }
 
-        while (Instant.now().isBefore(deadline)) {
-            wait(printDuration.toMillis());
-            if (stop) { break; }
+    /**
+     * The printer does not hold the lock while it sleeps in the scheduler, so {@link #stop()} can wake it.
+     */
+    private void printVirtually(Document document) throws InterruptedException {
+        Plan plan;
+        VirtualScheduler.Timer timer;
+        lock.lock();
+        try {
+            stop = false;
+            printingDocument = document;
+            plan = plan(document);
+            timer = scheduler.timer(plan.nanos);
+            this.timer = timer;
+        } finally {
+            lock.unlock();
+        }
+
+        boolean stopped;
+        try {
+            scheduler.sleep(timer);
+        } finally {
+            lock.lock();
+            try {
+                stopped = stop;
+                printingDocument = null;
+                this.timer = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (plan.fails && !stopped) {
+            throw failure(document);
+        }
+    }
+
+    /**
+     * Draws the duration and the outcome of the next print.
+     */
+    private Plan plan(Document document) {
+        double nanos = Durations.saturatedNanos(document.printDuration()) / timeScale;
+        if (jitter > 0) {
+            nanos *= 1 + jitter * (2 * random.nextDouble() - 1);
+        }
+        boolean fails = failureRate > 0 && random.nextDouble() < failureRate;
+        if (fails) {
+            nanos *= random.nextDouble();
         }
+        return new Plan((long) nanos, fails);
+    }
 
-        printingDocument = null;
+    private static IllegalStateException failure(Document document) {
+        return new IllegalStateException("simulated failure while printing " + document);
     }
 
+    /**
+     * @return Printing document or {@code null} if the printer is idle
+     */
+    public Document printingDocument() {
+        lock.lock();
+        try {
+            return printingDocument;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the current print, does nothing if the printer is idle.
+     */
     @Override
-    public synchronized Document stop() {
-        stop = true;
-        notifyAll();
-        return printingDocument;
+    public Document stop() {
+        lock.lock();
+        try {
+            stop = true;
+            stopped.signalAll();
+            if (timer != null) {
+                scheduler.cancel(timer);
+            }
+            return printingDocument;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Plan {
+        private final long nanos;
+        private final boolean fails;
+
+        private Plan(long nanos, boolean fails) {
+            this.nanos = nanos;
+            this.fails = fails;
+        }
     }
 }
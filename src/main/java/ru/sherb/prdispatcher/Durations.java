@@ -0,0 +1,52 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+
+final class Durations {
+
+    private Durations() {
+    }
+
+    /**
+     * @return Duration in nanos or {@link Long#MAX_VALUE} / {@link Long#MIN_VALUE} if it does not fit into long
+     */
+    static long saturatedNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return duration.isNegative() ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return Estimated work of the document, its print duration in nanos that is never negative
+     */
+    static long workNanos(Document document) {
+        return Math.max(0, saturatedNanos(document.printDuration()));
+    }
+
+    static long saturatedAdd(long a, long b) {
+        long result = a + b;
+        if (((a ^ result) & (b ^ result)) < 0) {
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return result;
+    }
+
+    static long saturatedSubtract(long a, long b) {
+        long result = a - b;
+        if (((a ^ b) & (a ^ result)) < 0) {
+            return a < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        return result;
+    }
+
+    static long saturatedMultiply(long a, long b) {
+        long high = Math.multiplyHigh(a, b);
+        long low = a * b;
+        if ((high == 0 && low >= 0) || (high == -1 && low < 0)) {
+            return low;
+        }
+        return (a < 0) == (b < 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,92 @@
+package ru.sherb.prdispatcher;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.function.Predicate;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+class FifoPrintQueue implements PrintQueue {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Queue<PrintJob> queue = new ArrayDeque<>();
+
+    @Override
+    public void put(PrintJob job) {
+        lock.lock();
+        try {
+            queue.add(job);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Collection<PrintJob> jobs) {
+        lock.lock();
+        try {
+            queue.addAll(jobs);
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public PrintJob take(Printer printer) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                notEmpty.await();
+            }
+            return queue.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public PrintJob poll(Printer printer) {
+        lock.lock();
+        try {
+            return queue.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public PrintJob pollIf(Printer printer, Predicate<PrintJob> condition) {
+        lock.lock();
+        try {
+            var next = queue.peek();
+            return next != null && condition.test(next) ? queue.poll() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void drainTo(Collection<? super PrintJob> target) {
+        lock.lock();
+        try {
+            target.addAll(queue);
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package ru.sherb.prdispatcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal file. Every record is
+ * {@code [int length][byte type][long job id][payload][int crc32]},
+ * where length covers the type, the id and the payload, and the checksum covers the same bytes.
+ * A torn record at the end of the file after a crash is ignored.
+ * <p>
+ * Producers append records to the in-memory buffer, the flusher thread swaps it
+ * with the second buffer, writes it with one {@link FileChannel#write} and forces it to the disk,
+ * so one fsync is shared by all records appended meanwhile.
+ * <p>
+ * The journal is compacted: the file is atomically replaced with the submissions of not finished jobs only.
+ * It is done on start and by the flusher instead of the next write, once enough jobs are finished since
+ * the last compaction, see {@link PrintJournal#compactAfter(int)}. To do so the journal keeps
+ * submission records of not finished jobs in memory. Recovery reads the file record by record.
+ */
+final class FileJournal implements Journal {
+
+    private static final Logger log = LoggerFactory.getLogger(FileJournal.class);
+
+    private static final byte SUBMIT = 1;
+    private static final byte START = 2;
+    private static final byte FINISH = 3;
+    private static final byte CANCEL = 4;
+
+    private static final int LENGTH_SIZE = Integer.BYTES;
+    private static final int HEADER_SIZE = Byte.BYTES + Long.BYTES;
+    private static final int CRC_SIZE = Integer.BYTES;
+
+    private final Path file;
+    private final DocumentCodec codec;
+    private final boolean syncOnSubmit;
+    private final int compactAfter;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private Buffer pending = new Buffer();
+    private Buffer writing = new Buffer();
+    private long appended = 0;
+    private long durable = 0;
+    private IOException failure;
+    private boolean closed = false;
+    // submission records of not finished jobs in order of submission
+    private final Map<Long, byte[]> live = new LinkedHashMap<>();
+    // jobs removed from the journal since the last compaction
+    private int removed = 0;
+
+    private FileChannel channel;
+    private Thread flusher;
+
+    FileJournal(PrintJournal settings) {
+        this.file = settings.file();
+        this.codec = settings.codec();
+        this.syncOnSubmit = settings.syncOnSubmit();
+        this.compactAfter = settings.compactAfter();
+    }
+
+    @Override
+    public List<Document> recover() {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+
+        var submitted = new LinkedHashMap<Long, Document>();
+        long size;
+        long position = 0;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            size = Files.size(file);
+            while (size - position >= LENGTH_SIZE) {
+                int length = in.readInt();
+                if (length < HEADER_SIZE || length > size - position - LENGTH_SIZE - CRC_SIZE) {
+                    break;
+                }
+                var bytes = new byte[length];
+                in.readFully(bytes);
+                var crc = new CRC32();
+                crc.update(bytes);
+                if ((int) crc.getValue() != in.readInt()) {
+                    break;
+                }
+
+                var record = ByteBuffer.wrap(bytes);
+                byte type = record.get();
+                long id = record.getLong();
+                if (type == SUBMIT) {
+                    submitted.put(id, decode(bytes, HEADER_SIZE, length - HEADER_SIZE));
+                } else if (type == FINISH || type == CANCEL) {
+                    submitted.remove(id);
+                }
+                position += LENGTH_SIZE + length + CRC_SIZE;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("can not read journal " + file, e);
+        }
+        if (position < size) {
+            log.warn("ignore {} bytes of torn record at the end of journal {}", size - position, file);
+        }
+
+        return new ArrayList<>(submitted.values());
+    }
+
+    private Document decode(byte[] bytes, int offset, int length) {
+        try {
+            return codec.decode(new DataInputStream(new ByteArrayInputStream(bytes, offset, length)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("can not decode document from journal " + file, e);
+        }
+    }
+
+    @Override
+    public void start(Collection<PrintJob> recovered) {
+        for (PrintJob job : recovered) {
+            live.put(job.id(), submitRecord(job));
+        }
+        try {
+            replace(live.values());
+        } catch (IOException e) {
+            throw new UncheckedIOException("can not write journal " + file, e);
+        }
+
+        flusher = new Thread(this::flush, "print-journal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Atomically replaces the file with the given records and reopens it for appending.
+     */
+    private void replace(Collection<byte[]> records) throws IOException {
+        var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = FileChannel.open(tmp,
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.TRUNCATE_EXISTING,
+                                        StandardOpenOption.WRITE)) {
+            var compacted = new Buffer();
+            for (byte[] record : records) {
+                compacted.write(record);
+            }
+            compacted.writeTo(out);
+            out.force(true);
+        }
+
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (channel != null) {
+            channel.close();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public long submitted(PrintJob job) {
+        return append(SUBMIT, job.id(), submitRecord(job));
+    }
+
+    @Override
+    public long submitted(Collection<PrintJob> jobs) {
+        var records = new ArrayList<byte[]>(jobs.size());
+        for (PrintJob job : jobs) {
+            records.add(submitRecord(job));
+        }
+
+        lock.lock();
+        try {
+            if (closed || failure != null) {
+                return appended;
+            }
+            int i = 0;
+            for (PrintJob job : jobs) {
+                var record = records.get(i++);
+                live.put(job.id(), record);
+                pending.write(record);
+            }
+            appended++;
+            notEmpty.signal();
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitDurable(long ticket) {
+        if (!syncOnSubmit) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            while (durable < ticket && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+            if (durable < ticket) {
+                throw new UncheckedIOException("can not write journal " + file, failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void started(PrintJob job) {
+        append(START, job.id(), record(START, job.id(), null));
+    }
+
+    @Override
+    public void finished(PrintJob job, boolean printed) {
+        append(FINISH, job.id(), record(FINISH, job.id(), null));
+    }
+
+    @Override
+    public void cancelled(PrintJob job) {
+        append(CANCEL, job.id(), record(CANCEL, job.id(), null));
+    }
+
+    private byte[] submitRecord(PrintJob job) {
+        var payload = new ByteArrayOutputStream();
+        try {
+            codec.encode(job.document(), new DataOutputStream(payload));
+        } catch (IOException e) {
+            throw new UncheckedIOException("can not encode " + job.document(), e);
+        }
+        return record(SUBMIT, job.id(), payload.toByteArray());
+    }
+
+    private static byte[] record(byte type, long id, byte[] payload) {
+        int payloadSize = payload != null ? payload.length : 0;
+        int length = HEADER_SIZE + payloadSize;
+        var record = ByteBuffer.allocate(LENGTH_SIZE + length + CRC_SIZE);
+        record.putInt(length).put(type).putLong(id);
+        if (payload != null) {
+            record.put(payload);
+        }
+
+        var crc = new CRC32();
+        crc.update(record.array(), LENGTH_SIZE, length);
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    /**
+     * @return Ticket of the record, records appended after a failure or close are ignored
+     */
+    private long append(byte type, long id, byte[] record) {
+        lock.lock();
+        try {
+            if (closed || failure != null) {
+                return appended;
+            }
+            if (type == SUBMIT) {
+                live.put(id, record);
+            } else if ((type == FINISH || type == CANCEL) && live.remove(id) != null) {
+                removed++;
+            }
+            pending.write(record);
+            appended++;
+            notEmpty.signal();
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush() {
+        while (true) {
+            Buffer batch;
+            long ticket;
+            List<byte[]> compacted = null;
+            lock.lock();
+            try {
+                while (pending.size() == 0 && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = writing;
+                writing = batch;
+                ticket = appended;
+                // the cost of compaction is proportional to removed jobs
+                if (removed >= compactAfter && removed >= live.size()) {
+                    compacted = new ArrayList<>(live.values());
+                    removed = 0;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                if (compacted != null) {
+                    // the live records already include the batch
+                    replace(compacted);
+                } else {
+                    batch.writeTo(channel);
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                log.error("can not write journal {}, later records are lost", file, e);
+                lock.lock();
+                try {
+                    failure = e;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            batch.reset();
+
+            lock.lock();
+            try {
+                durable = ticket;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        boolean interrupted = false;
+        while (flusher != null && flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("can not close journal {}", file, e);
+        }
+    }
+
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        @Override
+        public void write(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeTo(FileChannel channel) throws IOException {
+            var buffer = ByteBuffer.wrap(buf, 0, count);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.sherb.prdispatcher;
+
+/**
+ * Compact record of a finished {@link PrintJob} kept in {@link PrintHistory}.
+ * It does not reference the completion future of the job.
+ */
+final class FinishedJob {
+
+    private final long id;
+    private final Document document;
+    private final boolean printed;
+    private final long finishedAt;
+
+    FinishedJob(long id, Document document, boolean printed, long finishedAt) {
+        this.id = id;
+        this.document = document;
+        this.printed = printed;
+        this.finishedAt = finishedAt;
+    }
+
+    long id() {
+        return id;
+    }
+
+    Document document() {
+        return document;
+    }
+
+    boolean isPrinted() {
+        return printed;
+    }
+
+    PrintJob.Status status() {
+        return printed ? PrintJob.Status.PRINTED : PrintJob.Status.ABORTED;
+    }
+
+    /**
+     * @return Time when the job was finished by the clock of the dispatcher
+     */
+    long finishedAt() {
+        return finishedAt;
+    }
+}
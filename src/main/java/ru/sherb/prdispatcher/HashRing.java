@@ -0,0 +1,99 @@
+package ru.sherb.prdispatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent hash ring. Every node is placed at {@code replicas} points of the ring,
+ * a key belongs to the first node clockwise from the hash of the key, so adding or removing
+ * a node moves only keys of about {@code 1 / nodes} of the ring.
+ */
+final class HashRing<T> {
+
+    private final int replicas;
+    private final NavigableMap<Long, String> points;
+    private final Map<String, T> nodes;
+
+    HashRing(int replicas) {
+        this(replicas, new TreeMap<>(), Map.of());
+    }
+
+    private HashRing(int replicas, NavigableMap<Long, String> points, Map<String, T> nodes) {
+        this.replicas = replicas;
+        this.points = points;
+        this.nodes = nodes;
+    }
+
+    HashRing<T> with(String name, T node) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("node already exists: " + name);
+        }
+        var points = new TreeMap<>(this.points);
+        for (int i = 0; i < replicas; i++) {
+            // on the rare collision the point stays with the node that has the least name
+            points.merge(hash(name + '#' + i), name, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+        }
+        var nodes = new TreeMap<>(this.nodes);
+        nodes.put(name, node);
+        return new HashRing<>(replicas, points, nodes);
+    }
+
+    HashRing<T> without(String name) {
+        if (!nodes.containsKey(name)) {
+            throw new IllegalArgumentException("no such node: " + name);
+        }
+        var points = new TreeMap<>(this.points);
+        points.values().removeIf(name::equals);
+        var nodes = new TreeMap<>(this.nodes);
+        nodes.remove(name);
+        var ring = new HashRing<>(replicas, points, nodes);
+        // points that were won by the removed node on collisions
+        nodes.keySet().forEach(ring::restore);
+        return ring;
+    }
+
+    private void restore(String name) {
+        for (int i = 0; i < replicas; i++) {
+            points.putIfAbsent(hash(name + '#' + i), name);
+        }
+    }
+
+    /**
+     * @return Node of the key or {@code null} if the ring is empty
+     */
+    T get(String key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        var point = points.ceilingEntry(hash(key));
+        return nodes.get((point != null ? point : points.firstEntry()).getValue());
+    }
+
+    T node(String name) {
+        return nodes.get(name);
+    }
+
+    Map<String, T> nodes() {
+        return Collections.unmodifiableMap(nodes);
+    }
+
+    /**
+     * 64-bit FNV-1a of UTF-8 bytes with the MurmurHash3 finalizer, so similar keys are spread over the ring.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,64 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+
+/**
+ * Defines how long {@link DefaultPrintDispatcher} remembers finished documents.
+ * A finished document is forgotten as soon as any of the limits is exceeded.
+ */
+public final class HistoryRetention {
+
+    private static final HistoryRetention UNLIMITED = new HistoryRetention(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    private final int maxEntries;
+    private final long maxAgeNanos;
+
+    private HistoryRetention(int maxEntries, long maxAgeNanos) {
+        this.maxEntries = maxEntries;
+        this.maxAgeNanos = maxAgeNanos;
+    }
+
+    /**
+     * @return Retention that never forgets finished documents
+     */
+    public static HistoryRetention unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * @return Copy of retention that keeps at most {@code maxEntries} last finished documents
+     */
+    public HistoryRetention maxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("max entries must not be negative: " + maxEntries);
+        }
+        return new HistoryRetention(maxEntries, maxAgeNanos);
+    }
+
+    /**
+     * @return Copy of retention that forgets documents finished more than {@code maxAge} ago
+     */
+    public HistoryRetention maxAge(Duration maxAge) {
+        if (maxAge.isNegative()) {
+            throw new IllegalArgumentException("max age must not be negative: " + maxAge);
+        }
+        return new HistoryRetention(maxEntries, Durations.saturatedNanos(maxAge));
+    }
+
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    public Duration maxAge() {
+        return Duration.ofNanos(maxAgeNanos);
+    }
+
+    long maxAgeNanos() {
+        return maxAgeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryRetention[maxEntries: " + maxEntries + ", maxAge: " + maxAge() + ']';
+    }
+}
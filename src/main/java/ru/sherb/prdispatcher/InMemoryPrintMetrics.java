@@ -0,0 +1,262 @@
+package ru.sherb.prdispatcher;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps {@link PrintMetrics} in memory: counters, histograms of wait and service time
+ * and busy time of every printer. Suitable for tests and for periodic export
+ * to an external monitoring system via {@link #snapshot()}.
+ */
+public final class InMemoryPrintMetrics implements PrintMetrics {
+
+    private final LongSupplier nanoTime;
+    private final long createdAt;
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder printed = new LongAdder();
+    private final LongAdder notPrinted = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final LongAdder interrupted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder eventsDropped = new LongAdder();
+
+    private final PrintStatistics waitTime = new PrintStatistics();
+    private final PrintStatistics serviceTime = new PrintStatistics();
+    private final ConcurrentMap<Printer, LongAdder> busyNanos = new ConcurrentHashMap<>();
+
+    public InMemoryPrintMetrics() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param nanoTime Clock that measures utilization, must be the same as the clock of the dispatcher
+     */
+    public InMemoryPrintMetrics(LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        this.createdAt = nanoTime.getAsLong();
+    }
+
+    @Override
+    public void queued(int count) {
+        queued.add(count);
+    }
+
+    @Override
+    public void started(Printer printer, long waitNanos) {
+        started.increment();
+        waitTime.recordNanos(Math.max(0, waitNanos));
+    }
+
+    @Override
+    public void dropped(int count) {
+        dropped.add(count);
+    }
+
+    @Override
+    public void finished(Printer printer, long serviceNanos, boolean printed) {
+        (printed ? this.printed : notPrinted).increment();
+        serviceTime.recordNanos(Math.max(0, serviceNanos));
+
+        var busy = busyNanos.get(printer);
+        if (busy == null) {
+            busy = busyNanos.computeIfAbsent(printer, p -> new LongAdder());
+        }
+        busy.add(serviceNanos);
+    }
+
+    @Override
+    public void cancelled() {
+        cancelled.increment();
+    }
+
+    @Override
+    public void aborted() {
+        aborted.increment();
+    }
+
+    @Override
+    public void interrupted() {
+        interrupted.increment();
+    }
+
+    @Override
+    public void rejected(int documents) {
+        rejected.add(documents);
+    }
+
+    @Override
+    public void shed(int documents) {
+        shed.add(documents);
+    }
+
+    @Override
+    public void eventDropped() {
+        eventsDropped.increment();
+    }
+
+    /**
+     * @return Time from submission until a printer takes the job
+     */
+    public PrintStatistics waitTime() {
+        return waitTime;
+    }
+
+    /**
+     * @return Time spent in {@link Printer#print}, including failed and aborted prints
+     */
+    public PrintStatistics serviceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * Counters are read one by one, so under load the snapshot is not atomic
+     * and the queue depth may be off by the number of concurrent submissions.
+     */
+    public Snapshot snapshot() {
+        long elapsed = Math.max(1, nanoTime.getAsLong() - createdAt);
+        var utilization = new HashMap<Printer, Double>();
+        busyNanos.forEach((printer, busy) -> utilization.put(printer, Math.min(1.0, (double) busy.sum() / elapsed)));
+
+        return new Snapshot(
+                queued.sum(),
+                started.sum(),
+                dropped.sum(),
+                printed.sum(),
+                notPrinted.sum(),
+                cancelled.sum(),
+                aborted.sum(),
+                interrupted.sum(),
+                rejected.sum(),
+                shed.sum(),
+                eventsDropped.sum(),
+                utilization);
+    }
+
+    public static final class Snapshot {
+        private final long queued;
+        private final long started;
+        private final long dropped;
+        private final long printed;
+        private final long notPrinted;
+        private final long cancelled;
+        private final long aborted;
+        private final long interrupted;
+        private final long rejected;
+        private final long shed;
+        private final long eventsDropped;
+        private final Map<Printer, Double> utilization;
+
+        private Snapshot(long queued,
+                         long started,
+                         long dropped,
+                         long printed,
+                         long notPrinted,
+                         long cancelled,
+                         long aborted,
+                         long interrupted,
+                         long rejected,
+                         long shed,
+                         long eventsDropped,
+                         Map<Printer, Double> utilization) {
+            this.queued = queued;
+            this.started = started;
+            this.dropped = dropped;
+            this.printed = printed;
+            this.notPrinted = notPrinted;
+            this.cancelled = cancelled;
+            this.aborted = aborted;
+            this.interrupted = interrupted;
+            this.rejected = rejected;
+            this.shed = shed;
+            this.eventsDropped = eventsDropped;
+            this.utilization = Map.copyOf(utilization);
+        }
+
+        /**
+         * @return Number of jobs waiting in the queue, including cancelled jobs not yet skipped
+         */
+        public long queueDepth() {
+            return Math.max(0, queued - started - dropped);
+        }
+
+        public long queued() {
+            return queued;
+        }
+
+        public long started() {
+            return started;
+        }
+
+        public long dropped() {
+            return dropped;
+        }
+
+        public long printed() {
+            return printed;
+        }
+
+        /**
+         * @return Number of started jobs that were aborted or failed
+         */
+        public long notPrinted() {
+            return notPrinted;
+        }
+
+        public long cancelled() {
+            return cancelled;
+        }
+
+        public long aborted() {
+            return aborted;
+        }
+
+        public long interrupted() {
+            return interrupted;
+        }
+
+        public long rejected() {
+            return rejected;
+        }
+
+        public long shed() {
+            return shed;
+        }
+
+        public long eventsDropped() {
+            return eventsDropped;
+        }
+
+        /**
+         * @return Share of time from the creation of metrics the printer spent in {@link Printer#print},
+         * from 0 to 1
+         */
+        public double utilization(Printer printer) {
+            return utilization.getOrDefault(printer, 0.0);
+        }
+
+        @Override
+        public String toString() {
+            return "[queueDepth: " + queueDepth() +
+                    ", queued: " + queued +
+                    ", started: " + started +
+                    ", dropped: " + dropped +
+                    ", printed: " + printed +
+                    ", notPrinted: " + notPrinted +
+                    ", cancelled: " + cancelled +
+                    ", aborted: " + aborted +
+                    ", interrupted: " + interrupted +
+                    ", rejected: " + rejected +
+                    ", shed: " + shed +
+                    ", eventsDropped: " + eventsDropped + ']';
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ru.sherb.prdispatcher;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Log of job events that is used to restore not finished jobs,
+ * see {@link PrintJournal}. Every method does nothing by default.
+ */
+interface Journal {
+
+    static Journal none() {
+        return new Journal() {
+        };
+    }
+
+    /**
+     * @return Documents submitted and not removed from the journal in the order of submission
+     */
+    default List<Document> recover() {
+        return List.of();
+    }
+
+    /**
+     * Replaces the journal with the recovered jobs and starts writing.
+     */
+    default void start(Collection<PrintJob> recovered) {
+    }
+
+    /**
+     * @return Ticket to wait for the job to be written with {@link #awaitDurable(long)}
+     */
+    default long submitted(PrintJob job) {
+        return 0;
+    }
+
+    default long submitted(Collection<PrintJob> jobs) {
+        return 0;
+    }
+
+    /**
+     * Waits until the records appended before the ticket are forced to the disk,
+     * if the journal syncs every submission.
+     */
+    default void awaitDurable(long ticket) {
+    }
+
+    default void started(PrintJob job) {
+    }
+
+    default void finished(PrintJob job, boolean printed) {
+    }
+
+    default void cancelled(PrintJob job) {
+    }
+
+    /**
+     * Writes all appended records and closes the journal, later records are ignored.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,209 @@
+package ru.sherb.prdispatcher;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Multi-producer single-consumer linked queue in the manner of D. Vyukov's intrusive MPSC queue.
+ * A producer links its node with one {@code getAndSet} of the tail and never waits for other producers
+ * or for the consumer, a batch is linked privately and published with the same single {@code getAndSet}.
+ * <p>
+ * Printers take jobs one by one under the consumer lock, so the queue is shared by any number of printers.
+ * An idle printer spins, then yields, then parks, and it never holds the lock while it waits,
+ * so a printer that looks for the next document of its run is not blocked by idle ones.
+ * A producer unparks one parked printer, and a printer that has taken a job unparks the next one
+ * if there are more jobs.
+ */
+class LockFreePrintQueue implements PrintQueue {
+
+    private static final int SPINS = 100;
+    private static final int YIELDS = 10;
+
+    private static final AtomicReferenceFieldUpdater<LockFreePrintQueue, Node> TAIL =
+            AtomicReferenceFieldUpdater.newUpdater(LockFreePrintQueue.class, Node.class, "tail");
+
+    private final ReentrantLock consumerLock = new ReentrantLock();
+    private final LongAdder size = new LongAdder();
+
+    // guarded by consumerLock
+    private Node head;
+    private volatile Node tail;
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    LockFreePrintQueue() {
+        head = tail = new Node(null);
+    }
+
+    @Override
+    public void put(PrintJob job) {
+        var node = new Node(job);
+        size.increment();
+        link(node, node);
+    }
+
+    @Override
+    public void putAll(Collection<PrintJob> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        Node first = null;
+        Node last = null;
+        for (PrintJob job : jobs) {
+            var node = new Node(job);
+            if (first == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+        size.add(jobs.size());
+        link(first, last);
+    }
+
+    private void link(Node first, Node last) {
+        var prev = TAIL.getAndSet(this, last);
+        // volatile write, so it can not be reordered with the read of waiters below
+        prev.next = first;
+        signal();
+    }
+
+    private void signal() {
+        var waiter = waiters.peek();
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    @Override
+    public PrintJob take(Printer printer) throws InterruptedException {
+        int idle = 0;
+        while (true) {
+            PrintJob job;
+            boolean more;
+            consumerLock.lockInterruptibly();
+            try {
+                job = poll();
+                more = head.next != null;
+            } finally {
+                consumerLock.unlock();
+            }
+            if (job != null) {
+                // a producer wakes up only one printer even if it has put many jobs
+                if (more) {
+                    signal();
+                }
+                return job;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            idle = idle(idle);
+        }
+    }
+
+    @Override
+    public PrintJob poll(Printer printer) {
+        consumerLock.lock();
+        try {
+            return poll();
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    @Override
+    public PrintJob pollIf(Printer printer, Predicate<PrintJob> condition) {
+        consumerLock.lock();
+        try {
+            var next = head.next;
+            return next != null && condition.test(next.job) ? poll() : null;
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    /**
+     * Waits a bit longer every time nothing has been taken.
+     *
+     * @return Number of idle rounds so far
+     */
+    private int idle(int idle) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            var current = Thread.currentThread();
+            waiters.add(current);
+            // the producer might link its node before it could see the waiter
+            if (isEmpty()) {
+                LockSupport.park(this);
+            }
+            waiters.remove(current);
+        }
+        return idle + 1;
+    }
+
+    private boolean isEmpty() {
+        consumerLock.lock();
+        try {
+            return head.next == null;
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    /**
+     * May return {@code null} even if the queue is not empty
+     * while a producer has swapped the tail but not linked its node yet.
+     */
+    private PrintJob poll() {
+        var next = head.next;
+        if (next == null) {
+            return null;
+        }
+        var job = next.job;
+        next.job = null;
+        head = next;
+        size.decrement();
+        return job;
+    }
+
+    /**
+     * Expects that no job is being put concurrently.
+     */
+    @Override
+    public void drainTo(Collection<? super PrintJob> target) {
+        consumerLock.lock();
+        try {
+            PrintJob job;
+            while ((job = poll()) != null) {
+                target.add(job);
+            }
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, size.sum());
+    }
+
+    private static final class Node {
+        private PrintJob job;
+        private volatile Node next;
+
+        private Node(PrintJob job) {
+            this.job = job;
+        }
+    }
+}
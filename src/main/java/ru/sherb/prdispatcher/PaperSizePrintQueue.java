@@ -0,0 +1,189 @@
+package ru.sherb.prdispatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps one queue per paper size under one lock.
+ * Printers with the same set of supported paper sizes wait on the same condition,
+ * so a new document wakes only one printer of every group that can print it.
+ */
+class PaperSizePrintQueue implements PrintQueue {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    final Map<PaperSize, Queue<Entry>> queues = new EnumMap<>(PaperSize.class);
+    private final Map<Set<PaperSize>, Condition> waiters = new HashMap<>();
+
+    private long sequence;
+    private int size;
+
+    PaperSizePrintQueue() {
+        for (PaperSize paperSize : PaperSize.values()) {
+            queues.put(paperSize, new ArrayDeque<>());
+        }
+    }
+
+    @Override
+    public boolean respectsPaperSizes() {
+        return true;
+    }
+
+    @Override
+    public void put(PrintJob job) {
+        lock.lock();
+        try {
+            add(job);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Collection<PrintJob> jobs) {
+        lock.lock();
+        try {
+            jobs.forEach(this::add);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(PrintJob job) {
+        var paperSize = job.document().paperSize();
+        queues.get(paperSize).add(new Entry(sequence++, job, queuedAt()));
+        size++;
+        waiters.forEach((paperSizes, notEmpty) -> {
+            if (paperSizes.contains(paperSize)) {
+                notEmpty.signal();
+            }
+        });
+    }
+
+    @Override
+    public PrintJob take(Printer printer) throws InterruptedException {
+        var paperSizes = printer.supportedPaperSizes();
+        lock.lockInterruptibly();
+        try {
+            Queue<Entry> selected;
+            while ((selected = select(printer)) == null) {
+                waiters.computeIfAbsent(paperSizes, __ -> lock.newCondition()).await();
+            }
+            return poll(printer, selected);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public PrintJob poll(Printer printer) {
+        lock.lock();
+        try {
+            var selected = select(printer);
+            return selected != null ? poll(printer, selected) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public PrintJob pollIf(Printer printer, Predicate<PrintJob> condition) {
+        lock.lock();
+        try {
+            var selected = select(printer);
+            if (selected == null || !condition.test(selected.peek().job)) {
+                return null;
+            }
+            return poll(printer, selected);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PrintJob poll(Printer printer, Queue<Entry> selected) {
+        var entry = selected.poll();
+        size--;
+        taken(printer, entry);
+        return entry.job;
+    }
+
+    /**
+     * Is called under the lock.
+     *
+     * @return Not empty queue to take the next job for the printer from or {@code null} if there is none
+     */
+    Queue<Entry> select(Printer printer) {
+        return oldestOf(printer.supportedPaperSizes());
+    }
+
+    /**
+     * Is called under the lock after the entry is removed from the queue.
+     */
+    void taken(Printer printer, Entry entry) {
+    }
+
+    /**
+     * @return Time the new entry is queued at, it is not tracked by default
+     */
+    long queuedAt() {
+        return 0;
+    }
+
+    Queue<Entry> oldestOf(Set<PaperSize> paperSizes) {
+        Queue<Entry> oldest = null;
+        for (PaperSize paperSize : paperSizes) {
+            var queue = queues.get(paperSize);
+            var head = queue.peek();
+            if (head != null && (oldest == null || head.sequence < oldest.peek().sequence)) {
+                oldest = queue;
+            }
+        }
+        return oldest;
+    }
+
+    @Override
+    public void drainTo(Collection<? super PrintJob> target) {
+        lock.lock();
+        try {
+            List<Entry> all = new ArrayList<>(size);
+            queues.values().forEach(all::addAll);
+            queues.values().forEach(Queue::clear);
+            size = 0;
+            all.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+            all.forEach(entry -> target.add(entry.job));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static class Entry {
+        final long sequence;
+        final PrintJob job;
+        final long queuedAt;
+
+        private Entry(long sequence, PrintJob job, long queuedAt) {
+            this.sequence = sequence;
+            this.job = job;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+
+/**
+ * Defines how many documents {@link DefaultPrintDispatcher} accepts into its queue and
+ * what {@link PrintDispatcher#print} does when the queue is full. The queue is full as soon as
+ * any of the limits would be exceeded by a new document, queued work is estimated by the sum of
+ * {@link Document#printDuration()}. A document is always admitted into an empty queue,
+ * so a single document longer than the limit can still be printed.
+ */
+public final class PrintAdmission {
+
+    private static final PrintAdmission UNBOUNDED =
+            new PrintAdmission(Integer.MAX_VALUE, Long.MAX_VALUE, Overflow.REJECT, 0);
+
+    private final int maxQueuedDocs;
+    private final long maxQueuedWorkNanos;
+    private final Overflow overflow;
+    private final long blockTimeoutNanos;
+
+    private PrintAdmission(int maxQueuedDocs, long maxQueuedWorkNanos, Overflow overflow, long blockTimeoutNanos) {
+        this.maxQueuedDocs = maxQueuedDocs;
+        this.maxQueuedWorkNanos = maxQueuedWorkNanos;
+        this.overflow = overflow;
+        this.blockTimeoutNanos = blockTimeoutNanos;
+    }
+
+    /**
+     * @return Admission that accepts every document, it rejects when the queue is full if limits are set
+     */
+    public static PrintAdmission unbounded() {
+        return UNBOUNDED;
+    }
+
+    /**
+     * @return Copy of admission that keeps at most {@code maxQueuedDocs} documents in the queue
+     */
+    public PrintAdmission maxQueuedDocs(int maxQueuedDocs) {
+        if (maxQueuedDocs < 1) {
+            throw new IllegalArgumentException("max queued docs must be positive: " + maxQueuedDocs);
+        }
+        return new PrintAdmission(maxQueuedDocs, maxQueuedWorkNanos, overflow, blockTimeoutNanos);
+    }
+
+    /**
+     * @return Copy of admission that keeps documents with at most {@code maxQueuedWork} of total print duration
+     */
+    public PrintAdmission maxQueuedWork(Duration maxQueuedWork) {
+        if (maxQueuedWork.isNegative()) {
+            throw new IllegalArgumentException("max queued work must not be negative: " + maxQueuedWork);
+        }
+        return new PrintAdmission(maxQueuedDocs, Durations.saturatedNanos(maxQueuedWork), overflow, blockTimeoutNanos);
+    }
+
+    /**
+     * @return Copy of admission that throws {@link java.util.concurrent.RejectedExecutionException}
+     * at once when the queue is full
+     */
+    public PrintAdmission reject() {
+        return new PrintAdmission(maxQueuedDocs, maxQueuedWorkNanos, Overflow.REJECT, 0);
+    }
+
+    /**
+     * @return Copy of admission that waits up to {@code timeout} for place in the queue
+     * and then rejects. Waiting producers are rejected by {@link PrintDispatcher#stop()}.
+     */
+    public PrintAdmission block(Duration timeout) {
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+        }
+        return new PrintAdmission(maxQueuedDocs, maxQueuedWorkNanos, Overflow.BLOCK, Durations.saturatedNanos(timeout));
+    }
+
+    /**
+     * @return Copy of admission that makes place by aborting queued documents of priority lower
+     * than the new one, the lowest and the latest first. If that is not enough, the new document is rejected
+     * and nothing is aborted.
+     */
+    public PrintAdmission shedLowestPriority() {
+        return new PrintAdmission(maxQueuedDocs, maxQueuedWorkNanos, Overflow.SHED_LOWEST_PRIORITY, 0);
+    }
+
+    public int maxQueuedDocs() {
+        return maxQueuedDocs;
+    }
+
+    public Duration maxQueuedWork() {
+        return Duration.ofNanos(maxQueuedWorkNanos);
+    }
+
+    public Overflow overflow() {
+        return overflow;
+    }
+
+    public Duration blockTimeout() {
+        return Duration.ofNanos(blockTimeoutNanos);
+    }
+
+    long maxQueuedWorkNanos() {
+        return maxQueuedWorkNanos;
+    }
+
+    long blockTimeoutNanos() {
+        return blockTimeoutNanos;
+    }
+
+    boolean isBounded() {
+        return maxQueuedDocs != Integer.MAX_VALUE || maxQueuedWorkNanos != Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "PrintAdmission[maxQueuedDocs: " + maxQueuedDocs +
+                ", maxQueuedWork: " + maxQueuedWork() +
+                ", overflow: " + overflow +
+                (overflow == Overflow.BLOCK ? ", blockTimeout: " + blockTimeout() : "") + ']';
+    }
+
+    public enum Overflow {
+        REJECT,
+        BLOCK,
+        SHED_LOWEST_PRIORITY
+    }
+}
@@ -0,0 +1,81 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+
+/**
+ * Defines how {@link DefaultPrintDispatcher} merges documents into one run of a printer.
+ * After a printer takes a document it also takes the following queued documents of the same
+ * {@link Document#typeName()} and {@link Document#paperSize()} while the run fits into the window,
+ * and prints them with one {@link Printer#printAll} call. Every document keeps its own {@link PrintJob}.
+ * <p>
+ * The printer never waits for more documents, only already queued ones are merged.
+ * Queues of {@link PrintQueue#byPriority} and {@link PrintQueue#shortestJobFirst} do not merge documents.
+ */
+public final class PrintCoalescing {
+
+    private static final PrintCoalescing DISABLED = new PrintCoalescing(1, Long.MAX_VALUE);
+
+    private final int maxDocs;
+    private final long maxWorkNanos;
+
+    private PrintCoalescing(int maxDocs, long maxWorkNanos) {
+        this.maxDocs = maxDocs;
+        this.maxWorkNanos = maxWorkNanos;
+    }
+
+    /**
+     * @return Coalescing that prints every document separately
+     */
+    public static PrintCoalescing disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return Copy of coalescing that merges at most {@code maxDocs} documents into one run
+     */
+    public PrintCoalescing maxDocs(int maxDocs) {
+        if (maxDocs < 1) {
+            throw new IllegalArgumentException("max docs must be positive: " + maxDocs);
+        }
+        return new PrintCoalescing(maxDocs, maxWorkNanos);
+    }
+
+    /**
+     * @return Copy of coalescing that merges documents while the total print duration
+     * of the run does not exceed {@code maxWork}, the first document is printed anyway
+     */
+    public PrintCoalescing maxWork(Duration maxWork) {
+        if (maxWork.isNegative()) {
+            throw new IllegalArgumentException("max work must not be negative: " + maxWork);
+        }
+        return new PrintCoalescing(maxDocs, Durations.saturatedNanos(maxWork));
+    }
+
+    public int maxDocs() {
+        return maxDocs;
+    }
+
+    public Duration maxWork() {
+        return Duration.ofNanos(maxWorkNanos);
+    }
+
+    long maxWorkNanos() {
+        return maxWorkNanos;
+    }
+
+    boolean isEnabled() {
+        return maxDocs > 1;
+    }
+
+    /**
+     * @return {@code true} if the documents can be printed in one run
+     */
+    static boolean compatible(Document first, Document next) {
+        return first.paperSize() == next.paperSize() && first.typeName().equals(next.typeName());
+    }
+
+    @Override
+    public String toString() {
+        return "PrintCoalescing[maxDocs: " + maxDocs + ", maxWork: " + maxWork() + ']';
+    }
+}
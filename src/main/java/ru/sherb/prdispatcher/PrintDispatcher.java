@@ -1,8 +1,10 @@
 package ru.sherb.prdispatcher;
 
 import java.time.Duration;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Flow;
 
 /**
  * @author mshherbakov
@@ -12,13 +14,64 @@ public interface PrintDispatcher {
 
     List<Document> stop();
 
-    void print(Document document);
+    /**
+     * @return Handle to track or cancel the print of the document
+     * @throws java.util.concurrent.RejectedExecutionException if the dispatcher is stopped
+     *                                                         or the document is not admitted
+     */
+    PrintJob print(Document document);
 
+    /**
+     * Submits the batch of documents at once. The batch is either queued as a whole
+     * before {@link #stop()} collects not printed documents or rejected.
+     *
+     * @return Handles in the order of documents
+     * @throws java.util.concurrent.RejectedExecutionException if the dispatcher is stopped
+     *                                                         or the batch is not admitted
+     */
+    List<PrintJob> printAll(Collection<? extends Document> documents);
+
+    /**
+     * Documents with the same type name are indistinguishable here,
+     * use {@link #cancel(long)} to cancel a particular one.
+     *
+     * @return Cancelled document or {@code null} if the last submitted document of the type is already finished
+     */
     Document cancel(String typeName);
 
+    /**
+     * @return {@code false} if the job is unknown or already finished
+     */
+    boolean cancel(long jobId);
+
+    /**
+     * @return Status of the job or {@code null} if it is unknown or already forgotten by the history
+     */
+    PrintJob.Status status(long jobId);
+
     List<Document> printedDocs();
 
+    /**
+     * Copies and sorts all printed documents, prefer {@link #printedDocs(PrintedQuery)} for orders it supports.
+     */
     List<Document> printedDocs(Comparator<Document> comparator);
 
+    /**
+     * @return Page of printed documents remembered by the history
+     */
+    List<Document> printedDocs(PrintedQuery query);
+
     Duration calcAvgPrintDuration();
+
+    /**
+     * @return Live statistics of print durations of printed documents
+     */
+    PrintStatistics statistics();
+
+    /**
+     * Changes of job statuses from the moment of subscription.
+     * A subscriber that does not keep up loses events instead of slowing down the dispatcher.
+     * Subscribers are completed by {@link #stop()}.
+     */
+    Flow.Publisher<PrintEvent> events();
 }
@@ -0,0 +1,43 @@
+package ru.sherb.prdispatcher;
+
+/**
+ * Change of the status of a job published by {@link PrintDispatcher#events()}.
+ * {@link PrintJob.Status#QUEUED} is published when the job is queued,
+ * {@link PrintJob.Status#PRINTING} when a printer takes it,
+ * and {@link PrintJob.Status#PRINTED} or {@link PrintJob.Status#ABORTED} when it is finished.
+ */
+public final class PrintEvent {
+
+    private final PrintJob job;
+    private final PrintJob.Status status;
+    private final long time;
+
+    PrintEvent(PrintJob job, PrintJob.Status status, long time) {
+        this.job = job;
+        this.status = status;
+        this.time = time;
+    }
+
+    public PrintJob job() {
+        return job;
+    }
+
+    /**
+     * @return New status of the job, it may already be outdated by {@link PrintJob#status()}
+     */
+    public PrintJob.Status status() {
+        return status;
+    }
+
+    /**
+     * @return Time of the change by the clock of the dispatcher
+     */
+    public long time() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "[status: " + status + ", job: " + job.id() + ", doc: " + job.document() + ']';
+    }
+}
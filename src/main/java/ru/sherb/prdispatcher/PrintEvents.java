@@ -0,0 +1,58 @@
+package ru.sherb.prdispatcher;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * Publishes changes of job statuses to subscribers of {@link PrintDispatcher#events()}.
+ * Every subscriber has its own bounded buffer that is drained by the executor,
+ * an event that does not fit into the buffer of a slow subscriber is dropped for that subscriber only,
+ * so the dispatcher never waits for subscribers. Without subscribers events are not even created.
+ */
+final class PrintEvents {
+
+    private final SubmissionPublisher<PrintEvent> publisher;
+    private final LongSupplier nanoTime;
+    private final BiPredicate<Flow.Subscriber<? super PrintEvent>, PrintEvent> onDrop;
+
+    PrintEvents(Executor executor, int bufferCapacity, PrintMetrics metrics, LongSupplier nanoTime) {
+        this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+        this.nanoTime = nanoTime;
+        this.onDrop = (subscriber, event) -> {
+            metrics.eventDropped();
+            return false;
+        };
+    }
+
+    Flow.Publisher<PrintEvent> publisher() {
+        return publisher;
+    }
+
+    void publish(PrintJob job, PrintJob.Status status) {
+        if (!publisher.hasSubscribers()) {
+            return;
+        }
+        offer(new PrintEvent(job, status, nanoTime.getAsLong()));
+    }
+
+    /**
+     * Publishes the event as is, e.g. an event of another dispatcher.
+     */
+    void offer(PrintEvent event) {
+        try {
+            publisher.offer(event, onDrop);
+        } catch (IllegalStateException e) {
+            // closed by stop, e.g. the job is cancelled after the stop
+        }
+    }
+
+    /**
+     * Completes subscribers after all published events.
+     */
+    void close() {
+        publisher.close();
+    }
+}
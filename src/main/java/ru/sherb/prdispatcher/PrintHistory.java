@@ -0,0 +1,233 @@
+package ru.sherb.prdispatcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Finished jobs in order of finishing, bounded by {@link HistoryRetention}.
+ * Outdated jobs are evicted from the head of the history on every {@link #add}
+ * and before every read, so eviction never scans the whole history
+ * and an idle history does not return what it has to forget.
+ * <p>
+ * If the history is indexed, printed jobs are also indexed by completion time and by print duration,
+ * both for all jobs and per paper size, to answer {@link PrintedQuery} page by page.
+ * Otherwise a page is selected by one scan of the history that keeps only the jobs up to the end of the page.
+ */
+class PrintHistory {
+
+    /**
+     * Limits the work of one {@link #add} when many jobs become outdated at once, e.g. after idle.
+     */
+    private static final int MAX_EVICTED_BY_AGE = 64;
+
+    private final HistoryRetention retention;
+    private final LongSupplier nanoTime;
+
+    private final Queue<FinishedJob> jobs = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<Long, FinishedJob> byId = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    // null if the history is not indexed
+    private final Index printed;
+    private final Map<PaperSize, Index> printedByPaperSize;
+
+    PrintHistory(HistoryRetention retention, boolean indexed, LongSupplier nanoTime) {
+        this.retention = retention;
+        this.nanoTime = nanoTime;
+        if (indexed) {
+            printed = new Index();
+            printedByPaperSize = new EnumMap<>(PaperSize.class);
+            for (PaperSize paperSize : PaperSize.values()) {
+                printedByPaperSize.put(paperSize, new Index());
+            }
+        } else {
+            printed = null;
+            printedByPaperSize = null;
+        }
+    }
+
+    /**
+     * The job is indexed before it is added to the eviction queue,
+     * so a concurrent eviction never misses an index entry.
+     */
+    void add(FinishedJob job) {
+        if (printed != null && job.isPrinted()) {
+            printed.add(job);
+            printedByPaperSize.get(job.document().paperSize()).add(job);
+        }
+        byId.put(job.id(), job);
+        jobs.add(job);
+        size.incrementAndGet();
+        evict(job.finishedAt());
+    }
+
+    private void evict(long now) {
+        while (size.get() > retention.maxEntries() && evictHead()) {
+            // evict until history fits into max entries
+        }
+
+        for (int i = 0; i < MAX_EVICTED_BY_AGE; i++) {
+            if (!evictOutdatedHead(now)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Unlike {@link #add} evicts all outdated jobs, every job is evicted only once
+     * so the cost is spread over the adds that have put them.
+     */
+    private void evictOutdated() {
+        if (retention.maxAgeNanos() == Long.MAX_VALUE) {
+            return;
+        }
+        long now = nanoTime.getAsLong();
+        while (evictOutdatedHead(now)) {
+            // evict until the head is not outdated
+        }
+    }
+
+    private boolean evictOutdatedHead(long now) {
+        var head = jobs.peek();
+        return head != null && isOutdated(head, now) && evictHead();
+    }
+
+    private boolean isOutdated(FinishedJob job, long now) {
+        return now - job.finishedAt() > retention.maxAgeNanos();
+    }
+
+    private boolean evictHead() {
+        var head = jobs.poll();
+        if (head == null) {
+            return false;
+        }
+        size.decrementAndGet();
+        byId.remove(head.id());
+        if (printed != null && head.isPrinted()) {
+            printed.remove(head);
+            printedByPaperSize.get(head.document().paperSize()).remove(head);
+        }
+        return true;
+    }
+
+    /**
+     * @return Finished job or {@code null} if it is unknown or already forgotten
+     */
+    FinishedJob get(long id) {
+        evictOutdated();
+        return byId.get(id);
+    }
+
+    Stream<FinishedJob> stream() {
+        evictOutdated();
+        return jobs.stream();
+    }
+
+    List<Document> printed(PrintedQuery query) {
+        return page(query, FinishedJob::document);
+    }
+
+    /**
+     * @return Page of printed jobs in the order of {@link #orderOf(PrintedQuery)}
+     */
+    List<FinishedJob> printedJobs(PrintedQuery query) {
+        return page(query, Function.identity());
+    }
+
+    private <T> List<T> page(PrintedQuery query, Function<FinishedJob, T> mapper) {
+        evictOutdated();
+        if (printed == null) {
+            return scan(query, mapper);
+        }
+        var index = query.paperSize() == null ? printed : printedByPaperSize.get(query.paperSize());
+        var ordered = query.order() == PrintedQuery.Order.PRINT_DURATION ? index.byDuration : index.byCompletion;
+        var iterator = (query.isReversed() ? ordered.descendingSet() : ordered).iterator();
+
+        for (int skipped = 0; skipped < query.offset() && iterator.hasNext(); skipped++) {
+            iterator.next();
+        }
+        var page = new ArrayList<T>(Math.min(query.limit(), 64));
+        while (page.size() < query.limit() && iterator.hasNext()) {
+            page.add(mapper.apply(iterator.next()));
+        }
+        return page;
+    }
+
+    /**
+     * Keeps the first {@code offset + limit} jobs of the order in a heap with the last of them on top.
+     */
+    private <T> List<T> scan(PrintedQuery query, Function<FinishedJob, T> mapper) {
+        int end = (int) Math.min(Integer.MAX_VALUE, (long) query.offset() + query.limit());
+        if (end == 0) {
+            return new ArrayList<>();
+        }
+        var order = orderOf(query);
+        var first = new PriorityQueue<FinishedJob>(Math.min(end, 64), order.reversed());
+        for (FinishedJob job : jobs) {
+            if (!job.isPrinted() || query.paperSize() != null && job.document().paperSize() != query.paperSize()) {
+                continue;
+            }
+            if (first.size() < end) {
+                first.add(job);
+            } else if (order.compare(job, first.peek()) < 0) {
+                first.poll();
+                first.add(job);
+            }
+        }
+
+        var sorted = new ArrayList<>(first);
+        sorted.sort(order);
+        var page = new ArrayList<T>(Math.max(0, sorted.size() - query.offset()));
+        for (int i = query.offset(); i < sorted.size(); i++) {
+            page.add(mapper.apply(sorted.get(i)));
+        }
+        return page;
+    }
+
+    static Comparator<FinishedJob> orderOf(PrintedQuery query) {
+        var order = query.order() == PrintedQuery.Order.PRINT_DURATION ? Index.BY_DURATION : Index.BY_COMPLETION;
+        return query.isReversed() ? order.reversed() : order;
+    }
+
+    int size() {
+        evictOutdated();
+        return size.get();
+    }
+
+    private static final class Index {
+        private static final Comparator<FinishedJob> BY_COMPLETION = Comparator
+                .comparingLong(FinishedJob::finishedAt)
+                .thenComparingLong(FinishedJob::id);
+
+        private static final Comparator<FinishedJob> BY_DURATION = Comparator
+                .comparing((FinishedJob job) -> job.document().printDuration())
+                .thenComparing(BY_COMPLETION);
+
+        private final NavigableSet<FinishedJob> byCompletion = new ConcurrentSkipListSet<>(BY_COMPLETION);
+        private final NavigableSet<FinishedJob> byDuration = new ConcurrentSkipListSet<>(BY_DURATION);
+
+        void add(FinishedJob job) {
+            byCompletion.add(job);
+            byDuration.add(job);
+        }
+
+        void remove(FinishedJob job) {
+            byCompletion.remove(job);
+            byDuration.remove(job);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package ru.sherb.prdispatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Handle of a document submitted to {@link PrintDispatcher}.
+ * Every job has an id that is unique within the JVM, so documents
+ * with the same {@link Document#typeName()} never replace each other.
+ * <p>
+ * A queued job is cancelled in place: it stays in {@link PrintQueue}
+ * and is skipped by the printer that takes it.
+ */
+public final class PrintJob {
+
+    public enum Status {
+        QUEUED, PRINTING, PRINTED, ABORTED;
+
+        public boolean isFinished() {
+            return this == PRINTED || this == ABORTED;
+        }
+    }
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private static final AtomicReferenceFieldUpdater<PrintJob, Status> STATUS =
+            AtomicReferenceFieldUpdater.newUpdater(PrintJob.class, Status.class, "status");
+
+    private static final AtomicIntegerFieldUpdater<PrintJob> RELEASED =
+            AtomicIntegerFieldUpdater.newUpdater(PrintJob.class, "released");
+
+    private static final AtomicIntegerFieldUpdater<PrintJob> ABORT_REQUESTED =
+            AtomicIntegerFieldUpdater.newUpdater(PrintJob.class, "abortRequested");
+
+    // who has requested to abort the print, the first request wins
+    private static final int NOT_REQUESTED = 0;
+    private static final int BY_CANCEL = 1;
+    private static final int BY_STOP = 2;
+
+    private final long id = IDS.incrementAndGet();
+    private final Document document;
+    private final long submittedAt;
+    private final Listener listener;
+    private final CompletableFuture<Document> completion = new CompletableFuture<>();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile int abortRequested = NOT_REQUESTED;
+    private volatile Abort abort;
+    private volatile int released = 0;
+    // guarded by this
+    private List<Runnable> finishActions;
+    private boolean finished = false;
+
+    PrintJob(Document document) {
+        this(document, System.nanoTime());
+    }
+
+    PrintJob(Document document, long submittedAt) {
+        this(document, submittedAt, null);
+    }
+
+    /**
+     * @param listener Notified of every change of the status and of the cancel, may be {@code null}
+     */
+    PrintJob(Document document, long submittedAt, Listener listener) {
+        this.document = document;
+        this.submittedAt = submittedAt;
+        this.listener = listener;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public Document document() {
+        return document;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    /**
+     * Returned future is completed with the document when it is printed
+     * or is cancelled when the job is aborted. Cancelling the returned future
+     * does not affect the job, use {@link #cancel()} instead.
+     */
+    public CompletableFuture<Document> completion() {
+        var result = new CompletableFuture<Document>();
+        completion.whenComplete((document, failure) -> {
+            if (failure == null) {
+                result.complete(document);
+            } else if (failure instanceof CancellationException) {
+                result.cancel(false);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs the action when the job is finished, or at once if it is already finished.
+     * Actions are run before {@link #completion()} is completed, so whoever waits for it sees their effects.
+     */
+    void whenFinished(Runnable action) {
+        synchronized (this) {
+            if (!finished) {
+                if (finishActions == null) {
+                    finishActions = new ArrayList<>(1);
+                }
+                finishActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    private void runFinishActions() {
+        List<Runnable> actions;
+        synchronized (this) {
+            finished = true;
+            actions = finishActions;
+            finishActions = null;
+        }
+        if (actions != null) {
+            actions.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Removes the job from the queue or aborts its print.
+     *
+     * @return {@code false} if the job is already finished
+     */
+    public boolean cancel() {
+        if (abortQueued(true)) {
+            return true;
+        }
+        if (status != Status.PRINTING) {
+            return false;
+        }
+        return requestAbort(BY_CANCEL) || abortRequested == BY_CANCEL;
+    }
+
+    /**
+     * Aborts the print of the started job because the dispatcher stops.
+     *
+     * @return {@code false} if the job is not printing or is already cancelled
+     */
+    boolean abortOnStop() {
+        return status == Status.PRINTING && requestAbort(BY_STOP);
+    }
+
+    /**
+     * @return {@code true} if the print is aborted by {@link #abortOnStop()} and not by {@link #cancel()}
+     */
+    boolean isAbortedOnStop() {
+        return abortRequested == BY_STOP;
+    }
+
+    private boolean requestAbort(int by) {
+        if (!ABORT_REQUESTED.compareAndSet(this, NOT_REQUESTED, by)) {
+            return false;
+        }
+        if (by == BY_CANCEL && listener != null) {
+            listener.cancelled(this);
+        }
+        var abort = this.abort;
+        if (abort != null) {
+            abort.abort(this);
+        }
+        return true;
+    }
+
+    /**
+     * @return Time of the submission by the clock of the dispatcher
+     */
+    long submittedAt() {
+        return submittedAt;
+    }
+
+    /**
+     * @return {@code false} if the job was cancelled while queued
+     */
+    boolean start() {
+        if (STATUS.compareAndSet(this, Status.QUEUED, Status.PRINTING)) {
+            notifyListener(Status.QUEUED, Status.PRINTING);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Marks the place of the job in the admission as released.
+     *
+     * @return {@code true} only for the first call, so the place is released once
+     */
+    boolean release() {
+        return RELEASED.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * Sets the way to abort the print of started job.
+     * It is called at once if the job was cancelled after the start.
+     */
+    void onAbort(Abort abort) {
+        this.abort = abort;
+        if (abortRequested != NOT_REQUESTED) {
+            abort.abort(this);
+        }
+    }
+
+    /**
+     * @return {@code false} if the job is already taken by a printer
+     */
+    boolean abortQueued() {
+        return abortQueued(false);
+    }
+
+    private boolean abortQueued(boolean cancelled) {
+        if (STATUS.compareAndSet(this, Status.QUEUED, Status.ABORTED)) {
+            notifyListener(Status.QUEUED, Status.ABORTED);
+            if (cancelled && listener != null) {
+                listener.cancelled(this);
+            }
+            runFinishActions();
+            completion.cancel(false);
+            return true;
+        }
+        return false;
+    }
+
+    void finish(boolean printed) {
+        abort = null;
+        if (STATUS.compareAndSet(this, Status.PRINTING, printed ? Status.PRINTED : Status.ABORTED)) {
+            notifyListener(Status.PRINTING, printed ? Status.PRINTED : Status.ABORTED);
+            runFinishActions();
+            if (printed) {
+                completion.complete(document);
+            } else {
+                completion.cancel(false);
+            }
+        }
+    }
+
+    private void notifyListener(Status previous, Status status) {
+        if (listener != null) {
+            listener.statusChanged(this, previous, status);
+        }
+    }
+
+    interface Listener {
+        /**
+         * Is called by the thread that has changed the status, right after the change.
+         */
+        void statusChanged(PrintJob job, Status previous, Status status);
+
+        /**
+         * Is called once by the first successful {@link #cancel()}, before the print is aborted
+         * and before {@link #completion()} is cancelled.
+         */
+        void cancelled(PrintJob job);
+    }
+
+    /**
+     * Aborts the print of a started job, may be called more than once.
+     */
+    @FunctionalInterface
+    interface Abort {
+        void abort(PrintJob job);
+    }
+
+    @Override
+    public String toString() {
+        return "[id: " + id + ", status: " + status + ", doc: " + document + ']';
+    }
+}
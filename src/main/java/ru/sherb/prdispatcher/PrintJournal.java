@@ -0,0 +1,87 @@
+package ru.sherb.prdispatcher;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Defines the write-ahead journal of {@link DefaultPrintDispatcher}.
+ * Every submitted document is appended to the file before it is queued,
+ * and is removed from the journal when it is finished, cancelled or returned by {@link PrintDispatcher#stop()}.
+ * A new dispatcher with the same journal queues again all documents that were not removed,
+ * so after a crash a document that was printing at the moment is printed once more.
+ * <p>
+ * Records are written by one background thread: all records appended
+ * while the previous batch is being forced to the disk are written and forced together.
+ * Records of finished documents are dropped from the file on start and while the dispatcher runs,
+ * see {@link #compactAfter(int)}.
+ */
+public final class PrintJournal {
+
+    private final Path file;
+    private final DocumentCodec codec;
+    private final boolean syncOnSubmit;
+    private final int compactAfter;
+
+    private PrintJournal(Path file, DocumentCodec codec, boolean syncOnSubmit, int compactAfter) {
+        this.file = Objects.requireNonNull(file, "file");
+        this.codec = Objects.requireNonNull(codec, "codec");
+        this.syncOnSubmit = syncOnSubmit;
+        this.compactAfter = compactAfter;
+    }
+
+    /**
+     * @return Journal in the given file with {@link DocumentCodec#standard()} codec
+     * that syncs every submission
+     */
+    public static PrintJournal of(Path file) {
+        return new PrintJournal(file, DocumentCodec.standard(), true, 10_000);
+    }
+
+    /**
+     * @return Copy of journal that writes documents with the given codec
+     */
+    public PrintJournal codec(DocumentCodec codec) {
+        return new PrintJournal(file, codec, syncOnSubmit, compactAfter);
+    }
+
+    /**
+     * If {@code true}, {@link PrintDispatcher#print} returns only when the document is forced to the disk.
+     * Otherwise, it returns as soon as the document is queued, and the documents submitted
+     * right before a crash may be lost.
+     *
+     * @return Copy of journal with the given sync mode
+     */
+    public PrintJournal syncOnSubmit(boolean syncOnSubmit) {
+        return new PrintJournal(file, codec, syncOnSubmit, compactAfter);
+    }
+
+    /**
+     * The running journal is rewritten with not finished documents only, once at least
+     * {@code documents} documents, and at least as many as are not finished, are finished
+     * since the last compaction. 10 000 by default.
+     *
+     * @return Copy of journal with the given compaction threshold
+     */
+    public PrintJournal compactAfter(int documents) {
+        if (documents < 1) {
+            throw new IllegalArgumentException("compaction threshold must be positive: " + documents);
+        }
+        return new PrintJournal(file, codec, syncOnSubmit, documents);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public DocumentCodec codec() {
+        return codec;
+    }
+
+    public boolean syncOnSubmit() {
+        return syncOnSubmit;
+    }
+
+    public int compactAfter() {
+        return compactAfter;
+    }
+}
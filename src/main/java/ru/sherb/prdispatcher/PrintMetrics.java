@@ -0,0 +1,88 @@
+package ru.sherb.prdispatcher;
+
+/**
+ * Receives events of {@link DefaultPrintDispatcher} for monitoring.
+ * Methods are called on the hot path by submitting and worker threads,
+ * so they must be thread-safe, must not block and should not allocate.
+ * Every method does nothing by default.
+ * <p>
+ * The number of jobs in the queue is {@code queued - started - dropped}.
+ *
+ * @see InMemoryPrintMetrics
+ */
+public interface PrintMetrics {
+
+    /**
+     * @return Metrics that ignore all events
+     */
+    static PrintMetrics none() {
+        return new PrintMetrics() {
+        };
+    }
+
+    /**
+     * Jobs are put into the queue.
+     */
+    default void queued(int count) {
+    }
+
+    /**
+     * The printer has taken the job from the queue.
+     *
+     * @param waitNanos time from the submission of the job until it is taken
+     */
+    default void started(Printer printer, long waitNanos) {
+    }
+
+    /**
+     * Jobs have left the queue without being printed:
+     * they were cancelled before any printer took them or the dispatcher is stopped.
+     */
+    default void dropped(int count) {
+    }
+
+    /**
+     * {@link Printer#print} has returned, thrown or was aborted.
+     *
+     * @param serviceNanos time spent in {@link Printer#print}
+     */
+    default void finished(Printer printer, long serviceNanos, boolean printed) {
+    }
+
+    /**
+     * The job is cancelled by {@link PrintDispatcher#cancel} or {@link PrintJob#cancel()}, either queued or printing.
+     * A job is counted once however many times it is cancelled.
+     */
+    default void cancelled() {
+    }
+
+    /**
+     * The print is aborted by a cancel or a stop of the dispatcher.
+     */
+    default void aborted() {
+    }
+
+    /**
+     * {@link Printer#print} has thrown {@link InterruptedException}.
+     */
+    default void interrupted() {
+    }
+
+    /**
+     * Documents are not admitted into the full queue, see {@link PrintAdmission}.
+     */
+    default void rejected(int documents) {
+    }
+
+    /**
+     * Queued documents are aborted to admit documents of higher priority.
+     */
+    default void shed(int documents) {
+    }
+
+    /**
+     * The event is not delivered to a subscriber of {@link PrintDispatcher#events()} whose buffer is full.
+     */
+    default void eventDropped() {
+    }
+}
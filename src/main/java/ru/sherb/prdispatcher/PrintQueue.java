@@ -0,0 +1,164 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Queue of jobs waiting for a free printer.
+ * One instance must be used by only one {@link DefaultPrintDispatcher}.
+ * <p>
+ * Cancelled jobs are not removed from the queue, the dispatcher skips them when they are taken.
+ */
+public interface PrintQueue {
+
+    /**
+     * Single queue for all printers, documents are taken in order of arrival.
+     * {@link Printer#supportedPaperSizes()} is ignored.
+     */
+    static PrintQueue fifo() {
+        return new FifoPrintQueue();
+    }
+
+    /**
+     * Same order as {@link #fifo()}, but producers never take a lock:
+     * every {@link PrintDispatcher#print} is one atomic swap, and an idle printer waits
+     * for a job spinning before it parks. Suits many threads submitting at once.
+     * {@link Printer#supportedPaperSizes()} is ignored.
+     */
+    static PrintQueue lockFree() {
+        return new LockFreePrintQueue();
+    }
+
+    /**
+     * One queue per {@link PaperSize}. Printer takes the oldest document
+     * among the queues of paper sizes that it supports, so a document
+     * that waits for a busy printer never blocks an idle printer of another paper size.
+     */
+    static PrintQueue byPaperSize() {
+        return new PaperSizePrintQueue();
+    }
+
+    /**
+     * Like {@link #byPaperSize()}, but a printer keeps taking documents of its current paper size
+     * while there are any, unless the oldest document it supports has waited as long as
+     * {@link Printer#changeoverCost()} or {@code maxWait}, whichever is shorter.
+     * Saves changeovers when documents of different paper sizes are interleaved.
+     */
+    static ChangeoverPrintQueue minimizingChangeovers(Duration maxWait) {
+        return minimizingChangeovers(maxWait, System::nanoTime);
+    }
+
+    /**
+     * Same as {@link #minimizingChangeovers(Duration)} with the given clock, e.g. virtual time of {@link PrintSimulation}.
+     */
+    static ChangeoverPrintQueue minimizingChangeovers(Duration maxWait, LongSupplier nanoTime) {
+        return new ChangeoverPrintQueue(maxWait, nanoTime);
+    }
+
+    /**
+     * Document with greater {@link Document#priority()} is taken first.
+     * To avoid starvation a waiting document gains one priority level every {@code aging}.
+     * A document with {@link Document#deadline()} is taken before others as soon as its print
+     * must be started to meet the deadline.
+     * {@link Printer#supportedPaperSizes()} is ignored.
+     *
+     * @throws IllegalArgumentException if aging is not positive
+     */
+    static PrintQueue byPriority(Duration aging) {
+        return byPriority(aging, System::nanoTime);
+    }
+
+    /**
+     * Same as {@link #byPriority(Duration)} with the given clock, e.g. virtual time of {@link PrintSimulation}.
+     */
+    static PrintQueue byPriority(Duration aging, LongSupplier nanoTime) {
+        return new ScheduledPrintQueue(ScheduledPrintQueue.byPriority(aging.toNanos()), nanoTime);
+    }
+
+    /**
+     * Document with shorter {@link Document#printDuration()} is taken first.
+     * To avoid starvation a waiting document can be overtaken only by documents that are shorter
+     * by more than the time it has already waited. Deadlines are taken into account
+     * as in {@link #byPriority}.
+     * {@link Printer#supportedPaperSizes()} is ignored.
+     */
+    static PrintQueue shortestJobFirst() {
+        return shortestJobFirst(System::nanoTime);
+    }
+
+    /**
+     * Same as {@link #shortestJobFirst()} with the given clock, e.g. virtual time of {@link PrintSimulation}.
+     */
+    static PrintQueue shortestJobFirst(LongSupplier nanoTime) {
+        return new ScheduledPrintQueue(ScheduledPrintQueue.shortestJobFirst(), nanoTime);
+    }
+
+    /**
+     * Every printer waits for a job in its own deque and, when it is empty, steals from the peer
+     * with the most queued work. A new document goes to the printer with the least work, which is
+     * estimated by {@link Document#printDuration()} of queued and printing documents,
+     * so long documents are spread among printers rather than their count.
+     * Producers and printers rarely contend on one lock, it suits a pool of many printers.
+     * Order of arrival is kept per printer only.
+     */
+    static PrintQueue workStealing() {
+        return new WorkStealingPrintQueue();
+    }
+
+    /**
+     * The dispatcher requires such a queue when its printers support different paper sizes.
+     *
+     * @return {@code true} if a printer takes only documents of its {@link Printer#supportedPaperSizes()}
+     */
+    default boolean respectsPaperSizes() {
+        return false;
+    }
+
+    /**
+     * Is called once by the dispatcher before the first job is put, with all printers that will take jobs.
+     */
+    default void attach(Collection<? extends Printer> printers) {
+    }
+
+    void put(PrintJob job);
+
+    /**
+     * Puts jobs in the given order. Implementations take their lock once for the whole batch.
+     */
+    default void putAll(Collection<PrintJob> jobs) {
+        jobs.forEach(this::put);
+    }
+
+    /**
+     * Waits for a job that can be printed on the printer.
+     */
+    PrintJob take(Printer printer) throws InterruptedException;
+
+    /**
+     * @return Job that can be printed on the printer or {@code null} if there is none
+     */
+    PrintJob poll(Printer printer);
+
+    /**
+     * Takes the job that {@link #poll} would return only if it matches the condition,
+     * it lets a printer continue its run with similar documents, see {@link PrintCoalescing}.
+     * Implementations that can not look at the next job without taking it return {@code null}.
+     *
+     * @return Matching job or {@code null} if the next job does not match or there is none
+     */
+    default PrintJob pollIf(Printer printer, Predicate<PrintJob> condition) {
+        return null;
+    }
+
+    /**
+     * Removes all queued jobs in order of arrival.
+     */
+    void drainTo(Collection<? super PrintJob> target);
+
+    /**
+     * @return Number of queued jobs including cancelled ones that are not taken yet
+     */
+    int size();
+}
@@ -0,0 +1,202 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Deterministic simulation of {@link DefaultPrintDispatcher} in virtual time.
+ * The real dispatcher with its workers, the given {@link PrintQueue} and {@link DryPrinter}s
+ * run on a virtual clock: printers sleep in virtual time and the clock jumps to the next event
+ * as soon as every worker waits, so a day of load takes as long as it takes to process its events.
+ * Only one thread of the simulation runs at a time, so with seeded printers every run gives the same result.
+ * <p>
+ * The printers are bound to the simulation and must not be used by another dispatcher.
+ * Measurements are collected by {@link #metrics()} in virtual time.
+ * {@link Document#deadline()} comes in virtual time that starts at the wall time when the queue is created.
+ */
+public final class PrintSimulation implements AutoCloseable {
+
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final InMemoryPrintMetrics metrics = new InMemoryPrintMetrics(scheduler);
+    private final DefaultPrintDispatcher dispatcher;
+
+    public PrintSimulation(List<DryPrinter> printers) {
+        this(printers, clock -> PrintQueue.fifo());
+    }
+
+    /**
+     * @param queue Creates the queue with the virtual clock, e.g. {@code PrintQueue::shortestJobFirst}
+     */
+    public PrintSimulation(List<DryPrinter> printers, Function<LongSupplier, PrintQueue> queue) {
+        printers.forEach(printer -> printer.scheduler(scheduler));
+        this.dispatcher = DefaultPrintDispatcher.builder()
+                .printers(printers)
+                .queue(new SimulatedQueue(queue.apply(scheduler), scheduler))
+                .threadFactory(scheduler.threads())
+                .clock(scheduler)
+                .metrics(metrics)
+                .build();
+    }
+
+    /**
+     * @return Virtual time since the start of the simulation
+     */
+    public Duration now() {
+        return Duration.ofNanos(scheduler.getAsLong());
+    }
+
+    public InMemoryPrintMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Simulated dispatcher, e.g. to cancel a job {@link #at} some time
+     */
+    public DefaultPrintDispatcher dispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Runs the action at the given virtual time.
+     */
+    public void at(Duration at, Runnable action) {
+        scheduler.at(Durations.saturatedNanos(at), action);
+    }
+
+    /**
+     * @return Job of the document that is completed when the document is queued at the given virtual time
+     */
+    public CompletableFuture<PrintJob> submitAt(Duration at, Document document) {
+        var job = new CompletableFuture<PrintJob>();
+        at(at, () -> job.complete(dispatcher.print(document)));
+        return job;
+    }
+
+    /**
+     * Queues documents one by one with the given interval starting from now.
+     * Documents are taken from the iterator only when they are queued,
+     * so a source of millions of documents does not occupy memory.
+     */
+    public void submitEvery(Duration interval, Iterator<? extends Document> documents) {
+        long intervalNanos = Durations.saturatedNanos(interval);
+        if (!documents.hasNext()) {
+            return;
+        }
+        scheduler.at(scheduler.getAsLong(), new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.print(documents.next());
+                if (documents.hasNext()) {
+                    scheduler.at(Durations.saturatedAdd(scheduler.getAsLong(), intervalNanos), this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs until there is nothing to queue and print.
+     */
+    public void run() {
+        scheduler.runUntil(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs all events until {@code now() + duration} and stops at that time.
+     */
+    public void runFor(Duration duration) {
+        scheduler.runUntil(Durations.saturatedAdd(scheduler.getAsLong(), Durations.saturatedNanos(duration)));
+    }
+
+    /**
+     * Stops the dispatcher and its workers.
+     *
+     * @return Documents that are not printed
+     */
+    public List<Document> stop() {
+        return dispatcher.stop();
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Lets printers wait for jobs in the scheduler, so it knows when every worker is idle.
+     */
+    private static final class SimulatedQueue implements PrintQueue {
+        private final PrintQueue queue;
+        private final VirtualScheduler scheduler;
+        private final Map<Printer, Integer> order = new IdentityHashMap<>();
+
+        private SimulatedQueue(PrintQueue queue, VirtualScheduler scheduler) {
+            this.queue = queue;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public boolean respectsPaperSizes() {
+            return queue.respectsPaperSizes();
+        }
+
+        @Override
+        public void attach(Collection<? extends Printer> printers) {
+            for (Printer printer : printers) {
+                order.put(printer, order.size());
+            }
+            queue.attach(printers);
+        }
+
+        @Override
+        public void put(PrintJob job) {
+            queue.put(job);
+            scheduler.put();
+        }
+
+        @Override
+        public void putAll(Collection<PrintJob> jobs) {
+            queue.putAll(jobs);
+            scheduler.put();
+        }
+
+        @Override
+        public PrintJob take(Printer printer) throws InterruptedException {
+            while (true) {
+                long puts = scheduler.puts();
+                var job = queue.poll(printer);
+                if (job != null) {
+                    return job;
+                }
+                scheduler.awaitPut(order.get(printer), puts);
+            }
+        }
+
+        @Override
+        public PrintJob poll(Printer printer) {
+            return queue.poll(printer);
+        }
+
+        @Override
+        public PrintJob pollIf(Printer printer, Predicate<PrintJob> condition) {
+            return queue.pollIf(printer, condition);
+        }
+
+        @Override
+        public void drainTo(Collection<? super PrintJob> target) {
+            queue.drainTo(target);
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running aggregates of print durations of printed documents.
+ * Durations are recorded once when a document is printed, so every read costs
+ * constant time and does not allocate, no matter how many documents were printed.
+ * <p>
+ * Percentiles are calculated from a log-linear histogram in the manner of HdrHistogram:
+ * every power of two range is split into {@value #SUB_BUCKETS} buckets,
+ * so a percentile differs from the exact value by less than 1 / {@value #SUB_BUCKETS}.
+ */
+public final class PrintStatistics {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = Long.SIZE - SUB_BUCKET_BITS;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong minNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxNanos = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS * SUB_BUCKETS);
+
+    /**
+     * A negative print duration of a document is recorded as zero.
+     */
+    void record(Duration duration) {
+        recordNanos(Math.max(0, Durations.saturatedNanos(duration)));
+    }
+
+    void recordNanos(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("duration must not be negative: " + nanos);
+        }
+        histogram.incrementAndGet(indexOf(nanos));
+        minNanos.accumulateAndGet(nanos, Math::min);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        sumNanos.add(nanos);
+        count.increment();
+    }
+
+    /**
+     * @return Number of printed documents
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    public long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * @return Minimal print duration or 0 if nothing is printed
+     */
+    public long minNanos() {
+        long min = minNanos.get();
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    /**
+     * @return Maximal print duration or 0 if nothing is printed
+     */
+    public long maxNanos() {
+        long max = maxNanos.get();
+        return max == Long.MIN_VALUE ? 0 : max;
+    }
+
+    /**
+     * @return Average print duration or 0 if nothing is printed
+     */
+    public long meanNanos() {
+        long count = count();
+        return count == 0 ? 0 : sumNanos() / count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return Print duration that is not exceeded by the given percent of printed documents
+     * or 0 if nothing is printed
+     */
+    public long percentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in [0, 100]: " + percentile);
+        }
+
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            seen += histogram.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), maxNanos());
+            }
+        }
+        // recording of the last documents is not finished yet
+        return maxNanos();
+    }
+
+    /**
+     * @return New statistics with everything recorded by the given ones so far
+     */
+    static PrintStatistics merge(Collection<PrintStatistics> all) {
+        var merged = new PrintStatistics();
+        for (PrintStatistics statistics : all) {
+            for (int i = 0; i < statistics.histogram.length(); i++) {
+                long count = statistics.histogram.get(i);
+                if (count != 0) {
+                    merged.histogram.addAndGet(i, count);
+                }
+            }
+            merged.minNanos.accumulateAndGet(statistics.minNanos.get(), Math::min);
+            merged.maxNanos.accumulateAndGet(statistics.maxNanos.get(), Math::max);
+            merged.sumNanos.add(statistics.sumNanos());
+            merged.count.add(statistics.count());
+        }
+        return merged;
+    }
+
+    public Duration mean() {
+        return Duration.ofNanos(meanNanos());
+    }
+
+    public Duration percentile(double percentile) {
+        return Duration.ofNanos(percentileNanos(percentile));
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int bucket = exponent - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> (bucket - 1)) - SUB_BUCKETS;
+        return bucket * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int bucket = index / SUB_BUCKETS;
+        long subBucket = SUB_BUCKETS + index % SUB_BUCKETS;
+        long highest = ((subBucket + 1) << (bucket - 1)) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+
+    @Override
+    public String toString() {
+        return "PrintStatistics[count: " + count() + ", mean: " + mean()
+                + ", min: " + Duration.ofNanos(minNanos()) + ", max: " + Duration.ofNanos(maxNanos()) + ']';
+    }
+}
@@ -0,0 +1,100 @@
+package ru.sherb.prdispatcher;
+
+/**
+ * Page of printed documents remembered by the history, see {@link PrintDispatcher#printedDocs(PrintedQuery)}.
+ * If the history is indexed by {@link DefaultPrintDispatcher.Builder#indexPrintedDocs()}, a page costs
+ * the number of skipped and returned documents no matter how many documents the history holds,
+ * otherwise it costs one scan of the history.
+ */
+public final class PrintedQuery {
+
+    enum Order {
+        COMPLETION_TIME, PRINT_DURATION
+    }
+
+    private final Order order;
+    private final boolean reversed;
+    private final PaperSize paperSize;
+    private final int offset;
+    private final int limit;
+
+    private PrintedQuery(Order order, boolean reversed, PaperSize paperSize, int offset, int limit) {
+        this.order = order;
+        this.reversed = reversed;
+        this.paperSize = paperSize;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * @return All printed documents from the earliest printed
+     */
+    public static PrintedQuery byCompletionTime() {
+        return new PrintedQuery(Order.COMPLETION_TIME, false, null, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return All printed documents from the shortest {@link Document#printDuration()},
+     * documents of equal duration in order of completion
+     */
+    public static PrintedQuery byPrintDuration() {
+        return new PrintedQuery(Order.PRINT_DURATION, false, null, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return Copy of query in the opposite order, e.g. the latest printed first
+     */
+    public PrintedQuery reversed() {
+        return new PrintedQuery(order, !reversed, paperSize, offset, limit);
+    }
+
+    /**
+     * @return Copy of query that returns only documents of the paper size
+     */
+    public PrintedQuery paperSize(PaperSize paperSize) {
+        return new PrintedQuery(order, reversed, paperSize, offset, limit);
+    }
+
+    /**
+     * @return Copy of query that skips first {@code offset} documents
+     */
+    public PrintedQuery offset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative: " + offset);
+        }
+        return new PrintedQuery(order, reversed, paperSize, offset, limit);
+    }
+
+    /**
+     * @return Copy of query that returns at most {@code limit} documents
+     */
+    public PrintedQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+        return new PrintedQuery(order, reversed, paperSize, offset, limit);
+    }
+
+    Order order() {
+        return order;
+    }
+
+    boolean isReversed() {
+        return reversed;
+    }
+
+    /**
+     * @return Paper size or {@code null} for all paper sizes
+     */
+    PaperSize paperSize() {
+        return paperSize;
+    }
+
+    int offset() {
+        return offset;
+    }
+
+    int limit() {
+        return limit;
+    }
+}
@@ -1,5 +1,11 @@
 package ru.sherb.prdispatcher;
 
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
 /**
  * @author maksim
  * @since 23.09.2019
@@ -8,5 +14,45 @@ public interface Printer {
 
     void print(Document document) throws InterruptedException;
 
+    /**
+     * Prints documents of the same type and paper size in one run, e.g. with one setup of the printer,
+     * see {@link PrintCoalescing}. {@link #stop()} or an interrupt stops the whole run.
+     * By default prints documents one by one and does not start the next one once the thread is interrupted.
+     *
+     * @param printed Must be called after every printed document in the order of the list
+     */
+    default void printAll(List<Document> documents, Consumer<Document> printed) throws InterruptedException {
+        for (Document document : documents) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            print(document);
+            printed.accept(document);
+        }
+    }
+
     Document stop();
+
+    /**
+     * @return Paper size the printer is loaded with or {@code null} if it is unknown, as by default.
+     * Then the paper size of the last document taken by the printer is assumed.
+     */
+    default PaperSize currentPaperSize() {
+        return null;
+    }
+
+    /**
+     * @return Time to switch the printer to another paper size, zero by default,
+     * then {@link PrintQueue#minimizingChangeovers} does not group documents by paper size
+     */
+    default Duration changeoverCost() {
+        return Duration.ZERO;
+    }
+
+    /**
+     * @return Paper sizes that printer can print on, all by default
+     */
+    default Set<PaperSize> supportedPaperSizes() {
+        return EnumSet.allOf(PaperSize.class);
+    }
 }
@@ -0,0 +1,241 @@
+package ru.sherb.prdispatcher;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Takes documents in order of rank that is calculated once when a document is put.
+ * Rank is a point of time in {@link System#nanoTime()} scale, so aging does not need
+ * to reorder the queue: a document that waits longer has a rank that is not changed,
+ * while ranks of new documents grow with the time.
+ * <p>
+ * Documents with a deadline are also kept in order of the latest time when their print must start.
+ * Once that time has come, such document is taken before any ranked one.
+ * A deadline is converted to the clock of the queue by the wall time and the clock reading taken
+ * when the queue is created, so with a virtual clock deadlines come in virtual time.
+ * A document taken from one heap stays in the other one until it reaches the head.
+ */
+class ScheduledPrintQueue implements PrintQueue {
+
+    private static final Comparator<Entry> BY_RANK = Comparator
+            .comparingLong((Entry entry) -> entry.rank)
+            .thenComparingLong(entry -> entry.sequence);
+
+    private static final Comparator<Entry> BY_LATEST_START = Comparator
+            .comparingLong((Entry entry) -> entry.latestStart)
+            .thenComparingLong(entry -> entry.sequence);
+
+    private final Rank rank;
+    private final LongSupplier nanoTime;
+    private final Instant origin;
+    private final long originNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Queue<Entry> ranked = new PriorityQueue<>(BY_RANK);
+    private final Queue<Entry> deadlines = new PriorityQueue<>(BY_LATEST_START);
+
+    private long sequence;
+    private int size;
+
+    ScheduledPrintQueue(Rank rank, LongSupplier nanoTime) {
+        this.rank = rank;
+        this.nanoTime = nanoTime;
+        this.origin = Instant.now();
+        this.originNanos = nanoTime.getAsLong();
+    }
+
+    /**
+     * One priority level is equal to {@code agingNanos} of waiting.
+     * Zero aging would make every priority equal, so it is rejected.
+     */
+    static Rank byPriority(long agingNanos) {
+        if (agingNanos <= 0) {
+            throw new IllegalArgumentException("aging must be positive: " + agingNanos);
+        }
+        return (document, now) -> {
+            long aging = Durations.saturatedMultiply(document.priority(), agingNanos);
+            return Durations.saturatedSubtract(now, aging);
+        };
+    }
+
+    /**
+     * The earlier a document can be finished if printed right now, the earlier it is taken.
+     */
+    static Rank shortestJobFirst() {
+        return (document, now) -> {
+            long printDuration = Durations.saturatedNanos(document.printDuration());
+            return Durations.saturatedAdd(now, printDuration);
+        };
+    }
+
+    /**
+     * @return Latest time by the clock of the queue when print of the document must start to meet its deadline
+     */
+    private long latestStartOf(Document document) {
+        Instant deadline = document.deadline();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        long fromOrigin = Durations.saturatedNanos(Duration.between(origin, deadline));
+        long printDuration = Durations.saturatedNanos(document.printDuration());
+        return Durations.saturatedSubtract(Durations.saturatedAdd(originNanos, fromOrigin), printDuration);
+    }
+
+    @Override
+    public void put(PrintJob job) {
+        var entry = entryOf(job, nanoTime.getAsLong());
+        lock.lock();
+        try {
+            add(entry);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Collection<PrintJob> jobs) {
+        long now = nanoTime.getAsLong();
+        var entries = new ArrayList<Entry>(jobs.size());
+        for (PrintJob job : jobs) {
+            entries.add(entryOf(job, now));
+        }
+        lock.lock();
+        try {
+            entries.forEach(this::add);
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry entryOf(PrintJob job, long now) {
+        return new Entry(rank.of(job.document(), now), latestStartOf(job.document()), job);
+    }
+
+    private void add(Entry entry) {
+        entry.sequence = sequence++;
+        ranked.add(entry);
+        if (entry.latestStart != Long.MAX_VALUE) {
+            deadlines.add(entry);
+        }
+        size++;
+    }
+
+    @Override
+    public PrintJob take(Printer printer) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public PrintJob poll(Printer printer) {
+        lock.lock();
+        try {
+            return size == 0 ? null : next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called under the lock on not empty queue
+     */
+    private PrintJob next() {
+        var entry = pollUrgent(nanoTime.getAsLong());
+        if (entry == null) {
+            entry = pollNotTaken(ranked);
+        }
+        entry.taken = true;
+        size--;
+        return entry.job;
+    }
+
+    private Entry pollUrgent(long now) {
+        var head = deadlines.peek();
+        while (head != null && head.taken) {
+            deadlines.poll();
+            head = deadlines.peek();
+        }
+        return head != null && head.latestStart <= now ? deadlines.poll() : null;
+    }
+
+    private static Entry pollNotTaken(Queue<Entry> queue) {
+        Entry entry;
+        do {
+            entry = queue.poll();
+        } while (entry.taken);
+        return entry;
+    }
+
+    @Override
+    public void drainTo(Collection<? super PrintJob> target) {
+        lock.lock();
+        try {
+            List<Entry> all = new ArrayList<>(size);
+            for (Entry entry : ranked) {
+                if (!entry.taken) {
+                    all.add(entry);
+                }
+            }
+            ranked.clear();
+            deadlines.clear();
+            size = 0;
+            all.sort(Comparator.comparingLong(entry -> entry.sequence));
+            all.forEach(entry -> target.add(entry.job));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    interface Rank {
+
+        /**
+         * @param now {@link System#nanoTime()} when the document is put
+         * @return The lower rank the earlier document is taken
+         */
+        long of(Document document, long now);
+    }
+
+    private static class Entry {
+        private final long rank;
+        private final long latestStart;
+        private final PrintJob job;
+        private long sequence;
+        private boolean taken;
+
+        private Entry(long rank, long latestStart, PrintJob job) {
+            this.rank = rank;
+            this.latestStart = latestStart;
+            this.job = job;
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package ru.sherb.prdispatcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Front end of several {@link DefaultPrintDispatcher}s, e.g. one per site.
+ * A document is routed to a shard by its key, {@link Document#typeName()} by default,
+ * with consistent hashing, so adding or removing a shard moves only a part of keys.
+ * <p>
+ * Documents of one key are sent to one shard in order of submission. A key moves to its new shard
+ * only after all its documents sent to the old shard are finished, so a rebalance never lets
+ * a later document of the key overtake an earlier one.
+ * <p>
+ * Views of printed documents and statistics are merged from shards on every call,
+ * pages are merged from pages of shards. Printed documents are compared across shards by the clocks
+ * of the shards, which must be the same, as {@link System#nanoTime()} by default.
+ */
+public final class ShardedPrintDispatcher implements PrintDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedPrintDispatcher.class);
+
+    private final Function<? super Document, String> key;
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Submitted> lastByTypeName = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock rebalance = new ReentrantReadWriteLock();
+    private final PrintEvents events = new PrintEvents(ForkJoinPool.commonPool(), Flow.defaultBufferSize(),
+                                                       PrintMetrics.none(), System::nanoTime);
+
+    // written under the write lock of rebalance
+    private volatile HashRing<DefaultPrintDispatcher> ring;
+
+    private ShardedPrintDispatcher(Builder builder) {
+        if (builder.shards.isEmpty()) {
+            throw new IllegalArgumentException("at least one shard is required");
+        }
+        this.key = builder.key;
+        var ring = new HashRing<DefaultPrintDispatcher>(builder.replicas);
+        for (Map.Entry<String, DefaultPrintDispatcher> shard : builder.shards.entrySet()) {
+            ring = ring.with(shard.getKey(), shard.getValue());
+            relayEvents(shard.getValue());
+        }
+        this.ring = ring;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Keys of existing shards are moved to the new shard as soon as their queued documents are finished.
+     */
+    public void addShard(String name, DefaultPrintDispatcher shard) {
+        rebalance.writeLock().lock();
+        try {
+            ring = ring.with(name, shard);
+            relayEvents(shard);
+        } finally {
+            rebalance.writeLock().unlock();
+        }
+        log.info("shard {} is added", name);
+    }
+
+    /**
+     * Stops the shard and sends documents it has not printed to their new shards
+     * in the order returned by {@link DefaultPrintDispatcher#stop()}.
+     * Their old jobs are aborted, so the new jobs are returned.
+     *
+     * @throws IllegalStateException if it is the last shard
+     */
+    public List<PrintJob> removeShard(String name) {
+        rebalance.writeLock().lock();
+        try {
+            var shard = ring.node(name);
+            if (shard == null) {
+                throw new IllegalArgumentException("no such shard: " + name);
+            }
+            if (ring.nodes().size() == 1) {
+                throw new IllegalStateException("the last shard can not be removed");
+            }
+            ring = ring.without(name);
+            // every job of the shard is finished by the stop, so its keys are free to move
+            var notPrinted = shard.stop();
+            log.info("shard {} is removed, {} documents are moved", name, notPrinted.size());
+            return notPrinted.isEmpty() ? List.of() : printAll(notPrinted);
+        } finally {
+            rebalance.writeLock().unlock();
+        }
+    }
+
+    public Map<String, DefaultPrintDispatcher> shards() {
+        return ring.nodes();
+    }
+
+    private void relayEvents(DefaultPrintDispatcher shard) {
+        shard.events().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(PrintEvent event) {
+                events.offer(event);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    @Override
+    public List<Document> stop() {
+        rebalance.writeLock().lock();
+        try {
+            var notPrinted = new ArrayList<Document>();
+            for (DefaultPrintDispatcher shard : ring.nodes().values()) {
+                notPrinted.addAll(shard.stop());
+            }
+            events.close();
+            return notPrinted;
+        } finally {
+            rebalance.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The route of the key is pinned under the read lock of rebalance and the document is submitted
+     * outside of it, so a submission that waits for place in the queue of a shard never blocks a rebalance.
+     * A submission rejected by a shard that is removed meanwhile is routed again.
+     */
+    @Override
+    public PrintJob print(Document document) {
+        var key = this.key.apply(document);
+        while (true) {
+            DefaultPrintDispatcher shard;
+            rebalance.readLock().lock();
+            try {
+                shard = acquire(key).shard;
+            } finally {
+                rebalance.readLock().unlock();
+            }
+
+            PrintJob job;
+            try {
+                job = shard.print(document);
+            } catch (RuntimeException e) {
+                release(key);
+                if (e instanceof RejectedExecutionException && isRemoved(shard)) {
+                    continue;
+                }
+                throw e;
+            }
+            submitted(key, shard, job);
+            return job;
+        }
+    }
+
+    /**
+     * The batch is queued as a whole on every shard, but not across shards:
+     * if a shard rejects its part, parts queued on other shards are cancelled.
+     * Routes are pinned and parts are submitted like in {@link #print}.
+     */
+    @Override
+    public List<PrintJob> printAll(Collection<? extends Document> documents) {
+        var batch = new Part(null);
+        int position = 0;
+        for (Document document : documents) {
+            batch.add(position++, key.apply(document), document);
+        }
+
+        var jobs = new PrintJob[documents.size()];
+        var queued = new ArrayList<PrintJob>(documents.size());
+        var remaining = route(batch);
+        while (!remaining.isEmpty()) {
+            var part = remaining.poll();
+            List<PrintJob> partJobs;
+            try {
+                partJobs = part.shard.printAll(part.documents);
+            } catch (RuntimeException e) {
+                part.release();
+                if (e instanceof RejectedExecutionException && isRemoved(part.shard)) {
+                    remaining.addAll(route(part));
+                    continue;
+                }
+                remaining.forEach(Part::release);
+                queued.forEach(PrintJob::cancel);
+                throw e;
+            }
+            for (int i = 0; i < partJobs.size(); i++) {
+                var job = partJobs.get(i);
+                submitted(part.keys.get(i), part.shard, job);
+                jobs[part.positions.get(i)] = job;
+                queued.add(job);
+            }
+        }
+        return List.of(jobs);
+    }
+
+    /**
+     * @return Parts of the documents by their pinned shards in order of the first document of every part
+     */
+    private Queue<Part> route(Part documents) {
+        var parts = new LinkedHashMap<DefaultPrintDispatcher, Part>();
+        rebalance.readLock().lock();
+        try {
+            for (int i = 0; i < documents.keys.size(); i++) {
+                var key = documents.keys.get(i);
+                var shard = acquire(key).shard;
+                parts.computeIfAbsent(shard, Part::new).add(documents.positions.get(i), key, documents.documents.get(i));
+            }
+        } finally {
+            rebalance.readLock().unlock();
+        }
+        return new ArrayDeque<>(parts.values());
+    }
+
+    private boolean isRemoved(DefaultPrintDispatcher shard) {
+        return !ring.nodes().containsValue(shard);
+    }
+
+    /**
+     * Routes the key to the shard of its unfinished documents or, if there are none
+     * or their shard is removed, to its shard on the ring.
+     */
+    private Route acquire(String key) {
+        return routes.compute(key, (k, route) -> {
+            if (route == null) {
+                route = new Route(ring.get(k));
+            } else if (isRemoved(route.shard)) {
+                // documents of the removed shard are finished by its stop
+                route.shard = ring.get(k);
+            }
+            route.unfinished++;
+            return route;
+        });
+    }
+
+    private void release(String key) {
+        routes.computeIfPresent(key, (k, route) -> {
+            route.unfinished--;
+            return route.unfinished == 0 ? null : route;
+        });
+    }
+
+    private void submitted(String key, DefaultPrintDispatcher shard, PrintJob job) {
+        var typeName = job.document().typeName();
+        var last = new Submitted(shard, job);
+        lastByTypeName.merge(typeName, last, (previous, next) -> next.job.id() > previous.job.id() ? next : previous);
+        job.whenFinished(() -> {
+            release(key);
+            lastByTypeName.remove(typeName, last);
+        });
+    }
+
+    /**
+     * Cancels the document of the type that is submitted last across all shards.
+     */
+    @Override
+    public Document cancel(String typeName) {
+        var last = lastByTypeName.get(typeName);
+        if (last == null || !last.shard.cancel(last.job.id())) {
+            return null;
+        }
+        return last.job.document();
+    }
+
+    @Override
+    public boolean cancel(long jobId) {
+        for (DefaultPrintDispatcher shard : ring.nodes().values()) {
+            if (shard.cancel(jobId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public PrintJob.Status status(long jobId) {
+        for (DefaultPrintDispatcher shard : ring.nodes().values()) {
+            var status = shard.status(jobId);
+            if (status != null) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Printed documents of all shards in order of completion
+     */
+    @Override
+    public List<Document> printedDocs() {
+        return printedDocs(PrintedQuery.byCompletionTime());
+    }
+
+    @Override
+    public List<Document> printedDocs(Comparator<Document> comparator) {
+        var printed = new ArrayList<Document>();
+        for (DefaultPrintDispatcher shard : ring.nodes().values()) {
+            printed.addAll(shard.printedDocs());
+        }
+        printed.sort(comparator);
+        return printed;
+    }
+
+    /**
+     * Takes at most {@code offset + limit} documents from every shard and merges them.
+     */
+    @Override
+    public List<Document> printedDocs(PrintedQuery query) {
+        int perShard = (int) Math.min(Integer.MAX_VALUE, (long) query.offset() + query.limit());
+        var shardQuery = query.offset(0).limit(perShard);
+        var order = PrintHistory.orderOf(query);
+        var heads = new PriorityQueue<Head>(Comparator.comparing((Head head) -> head.job, order));
+        for (DefaultPrintDispatcher shard : ring.nodes().values()) {
+            var page = shard.printedJobs(shardQuery);
+            if (!page.isEmpty()) {
+                heads.add(new Head(page));
+            }
+        }
+
+        var result = new ArrayList<Document>(Math.min(query.limit(), 64));
+        int skipped = 0;
+        while (result.size() < query.limit() && !heads.isEmpty()) {
+            var head = heads.poll();
+            if (skipped < query.offset()) {
+                skipped++;
+            } else {
+                result.add(head.job.document());
+            }
+            if (head.next()) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Duration calcAvgPrintDuration() {
+        long count = 0;
+        long sumNanos = 0;
+        for (DefaultPrintDispatcher shard : ring.nodes().values()) {
+            var statistics = shard.statistics();
+            count += statistics.count();
+            sumNanos = Durations.saturatedAdd(sumNanos, statistics.sumNanos());
+        }
+        return Duration.ofNanos(count == 0 ? 0 : sumNanos / count);
+    }
+
+    /**
+     * @return Statistics merged from shards at the moment of the call
+     */
+    @Override
+    public PrintStatistics statistics() {
+        var all = new ArrayList<PrintStatistics>();
+        for (DefaultPrintDispatcher shard : ring.nodes().values()) {
+            all.add(shard.statistics());
+        }
+        return PrintStatistics.merge(all);
+    }
+
+    /**
+     * Events of all shards, including shards added later.
+     */
+    @Override
+    public Flow.Publisher<PrintEvent> events() {
+        return events.publisher();
+    }
+
+    /**
+     * Is changed only inside {@link ConcurrentHashMap#compute}.
+     */
+    private static final class Route {
+        private DefaultPrintDispatcher shard;
+        private int unfinished;
+
+        private Route(DefaultPrintDispatcher shard) {
+            this.shard = shard;
+        }
+    }
+
+    private static final class Submitted {
+        private final DefaultPrintDispatcher shard;
+        private final PrintJob job;
+
+        private Submitted(DefaultPrintDispatcher shard, PrintJob job) {
+            this.shard = shard;
+            this.job = job;
+        }
+    }
+
+    private final class Part {
+        private final DefaultPrintDispatcher shard;
+        private final List<Integer> positions = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+        private final List<Document> documents = new ArrayList<>();
+
+        private Part(DefaultPrintDispatcher shard) {
+            this.shard = shard;
+        }
+
+        void add(int position, String key, Document document) {
+            positions.add(position);
+            keys.add(key);
+            documents.add(document);
+        }
+
+        void release() {
+            keys.forEach(ShardedPrintDispatcher.this::release);
+        }
+    }
+
+    private static final class Head {
+        private final List<FinishedJob> page;
+        private int index;
+        private FinishedJob job;
+
+        private Head(List<FinishedJob> page) {
+            this.page = page;
+            this.job = page.get(0);
+        }
+
+        boolean next() {
+            if (++index == page.size()) {
+                return false;
+            }
+            job = page.get(index);
+            return true;
+        }
+    }
+
+    public static class Builder {
+        private final Map<String, DefaultPrintDispatcher> shards = new LinkedHashMap<>();
+        private Function<? super Document, String> key = Document::typeName;
+        private int replicas = 128;
+
+        public Builder shard(String name, DefaultPrintDispatcher shard) {
+            if (shards.putIfAbsent(name, shard) != null) {
+                throw new IllegalArgumentException("shard already exists: " + name);
+            }
+            return this;
+        }
+
+        /**
+         * By default documents are routed by {@link Document#typeName()}, e.g. a tenant or a site may be used instead.
+         */
+        public Builder key(Function<? super Document, String> key) {
+            this.key = key;
+            return this;
+        }
+
+        /**
+         * Points of every shard on the ring, more points spread keys more evenly, 128 by default.
+         */
+        public Builder replicas(int replicas) {
+            if (replicas < 1) {
+                throw new IllegalArgumentException("replicas must be positive: " + replicas);
+            }
+            this.replicas = replicas;
+            return this;
+        }
+
+        public ShardedPrintDispatcher build() {
+            return new ShardedPrintDispatcher(this);
+        }
+    }
+}
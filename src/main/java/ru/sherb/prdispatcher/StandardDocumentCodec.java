@@ -0,0 +1,109 @@
+package ru.sherb.prdispatcher;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+final class StandardDocumentCodec implements DocumentCodec {
+
+    static final DocumentCodec INSTANCE = new StandardDocumentCodec();
+
+    private StandardDocumentCodec() {
+    }
+
+    @Override
+    public void encode(Document document, DataOutput out) throws IOException {
+        out.writeUTF(document.typeName());
+        out.writeUTF(document.paperSize().name());
+        out.writeLong(document.printDuration().getSeconds());
+        out.writeInt(document.printDuration().getNano());
+        out.writeInt(document.priority());
+
+        var deadline = document.deadline();
+        out.writeBoolean(deadline != null);
+        if (deadline != null) {
+            out.writeLong(deadline.getEpochSecond());
+            out.writeInt(deadline.getNano());
+        }
+    }
+
+    @Override
+    public Document decode(DataInput in) throws IOException {
+        var typeName = in.readUTF();
+        var paperSize = PaperSize.valueOf(in.readUTF());
+        var printDuration = Duration.ofSeconds(in.readLong(), in.readInt());
+        int priority = in.readInt();
+        var deadline = in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+        return new RestoredDocument(typeName, paperSize, printDuration, priority, deadline);
+    }
+
+    private static final class RestoredDocument implements Document {
+        private final String typeName;
+        private final PaperSize paperSize;
+        private final Duration printDuration;
+        private final int priority;
+        private final Instant deadline;
+
+        private RestoredDocument(String typeName,
+                                 PaperSize paperSize,
+                                 Duration printDuration,
+                                 int priority,
+                                 Instant deadline) {
+            this.typeName = typeName;
+            this.paperSize = paperSize;
+            this.printDuration = printDuration;
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public String typeName() {
+            return typeName;
+        }
+
+        @Override
+        public PaperSize paperSize() {
+            return paperSize;
+        }
+
+        @Override
+        public Duration printDuration() {
+            return printDuration;
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+
+        @Override
+        public Instant deadline() {
+            return deadline;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RestoredDocument that = (RestoredDocument) o;
+            return paperSize == that.paperSize &&
+                    priority == that.priority &&
+                    Objects.equals(typeName, that.typeName) &&
+                    Objects.equals(printDuration, that.printDuration) &&
+                    Objects.equals(deadline, that.deadline);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(typeName, paperSize, printDuration, priority, deadline);
+        }
+
+        @Override
+        public String toString() {
+            return "RestoredDocument[typeName: '" + typeName + "']";
+        }
+    }
+}
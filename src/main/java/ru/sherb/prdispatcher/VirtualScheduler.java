@@ -0,0 +1,298 @@
+package ru.sherb.prdispatcher;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Virtual clock and scheduler of {@link PrintSimulation}. Threads of the simulation are created by
+ * {@link #threads()}, and they wait only through the scheduler: printers sleep in {@link #sleep},
+ * idle workers wait for a job in {@link #awaitPut}. The clock jumps to the next timer only when
+ * all of them wait, so the simulation runs one thread at a time in a reproducible order.
+ * <p>
+ * Waiting takers are woken one by one in the order of their printers, and every woken thread
+ * runs until it waits again before the next one is woken or the clock moves.
+ */
+final class VirtualScheduler implements LongSupplier {
+
+    private static final Comparator<Timer> BY_TIME = Comparator
+            .comparingLong((Timer timer) -> timer.time)
+            .thenComparingLong(timer -> timer.sequence);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // signalled when the last running thread waits
+    private final Condition idle = lock.newCondition();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>(BY_TIME);
+    // takers waiting for a put by the order of their printers
+    private final TreeMap<Integer, Taker> takers = new TreeMap<>();
+    private volatile long now = 0;
+    private long sequence;
+    private long puts;
+    // threads of the simulation that are not waiting
+    private int running;
+
+    @Override
+    public long getAsLong() {
+        return now;
+    }
+
+    /**
+     * Threads that are watched by the scheduler, it waits for their start and exit.
+     */
+    ThreadFactory threads() {
+        var platform = WorkerThreads.platform();
+        return task -> {
+            var thread = platform.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    lock.lock();
+                    try {
+                        stopRunning();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            lock.lock();
+            try {
+                running++;
+            } finally {
+                lock.unlock();
+            }
+            return thread;
+        };
+    }
+
+    private void stopRunning() {
+        if (--running == 0) {
+            idle.signal();
+        }
+    }
+
+    /**
+     * Runs the action on the thread that runs the simulation at the given virtual time.
+     */
+    void at(long time, Runnable action) {
+        lock.lock();
+        try {
+            timers.add(new Timer(Math.max(now, time), sequence++, action, null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Timer that is passed to {@link #sleep} to wait for the given virtual time
+     */
+    Timer timer(long nanos) {
+        lock.lock();
+        try {
+            var timer = new Timer(Durations.saturatedAdd(now, nanos), sequence++, null, lock.newCondition());
+            timers.add(timer);
+            return timer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the virtual time of the timer or until it is {@link #cancel cancelled}.
+     */
+    void sleep(Timer timer) throws InterruptedException {
+        lock.lock();
+        try {
+            if (timer.fired) {
+                return;
+            }
+            timer.waiting = true;
+            stopRunning();
+            try {
+                while (!timer.fired) {
+                    timer.woken.await();
+                }
+            } catch (InterruptedException e) {
+                if (!timer.fired) {
+                    timer.fired = true;
+                    timers.remove(timer);
+                    running++;
+                }
+                throw e;
+            } finally {
+                timer.waiting = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the thread sleeping on the timer at once, does nothing if the timer has fired.
+     */
+    void cancel(Timer timer) {
+        lock.lock();
+        try {
+            if (!timer.fired) {
+                timers.remove(timer);
+                fire(timer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fire(Timer timer) {
+        timer.fired = true;
+        if (timer.waiting) {
+            running++;
+            timer.woken.signal();
+        }
+    }
+
+    /**
+     * @return Number of puts to pass to {@link #awaitPut}, read before looking for a job
+     */
+    long puts() {
+        lock.lock();
+        try {
+            return puts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put() {
+        lock.lock();
+        try {
+            puts++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the next put if there was none since {@code seen}.
+     *
+     * @param order Order in which takers are woken, unique per taker
+     */
+    void awaitPut(int order, long seen) throws InterruptedException {
+        lock.lock();
+        try {
+            if (puts != seen) {
+                return;
+            }
+            var taker = new Taker(seen, lock.newCondition());
+            takers.put(order, taker);
+            stopRunning();
+            try {
+                while (takers.get(order) == taker) {
+                    taker.woken.await();
+                }
+            } catch (InterruptedException e) {
+                if (takers.remove(order, taker)) {
+                    running++;
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs timers up to the given virtual time, which becomes the current one
+     * unless it is {@link Long#MAX_VALUE}.
+     */
+    void runUntil(long until) {
+        while (true) {
+            Runnable action;
+            lock.lock();
+            try {
+                awaitIdle();
+                if (wakeTaker()) {
+                    continue;
+                }
+                var next = timers.peek();
+                if (next == null || next.time > until) {
+                    if (until != Long.MAX_VALUE) {
+                        now = Math.max(now, until);
+                    }
+                    return;
+                }
+                timers.poll();
+                now = next.time;
+                if (next.action == null) {
+                    fire(next);
+                    continue;
+                }
+                next.fired = true;
+                action = next.action;
+            } finally {
+                lock.unlock();
+            }
+            action.run();
+        }
+    }
+
+    /**
+     * @return {@code false} if no taker has missed a put
+     */
+    private boolean wakeTaker() {
+        var iterator = takers.values().iterator();
+        while (iterator.hasNext()) {
+            var taker = iterator.next();
+            if (taker.seen != puts) {
+                iterator.remove();
+                running++;
+                taker.woken.signal();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void awaitIdle() {
+        boolean interrupted = false;
+        while (running > 0) {
+            try {
+                idle.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static final class Timer {
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+        private final Condition woken;
+        private boolean fired = false;
+        private boolean waiting = false;
+
+        private Timer(long time, long sequence, Runnable action, Condition woken) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+            this.woken = woken;
+        }
+    }
+
+    private static final class Taker {
+        private final long seen;
+        private final Condition woken;
+
+        private Taker(long seen, Condition woken) {
+            this.seen = seen;
+            this.woken = woken;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package ru.sherb.prdispatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Keeps a deque per printer, each under its own lock, so printers and producers rarely meet on one lock.
+ * A new job goes to the printer with the least estimated work, that is the sum of
+ * {@link Document#printDuration()} of its queued jobs and of the job it prints.
+ * A printer takes jobs from the head of its own deque, and when it is empty steals from the tail
+ * of the peer with the most queued work, about half of that work at once.
+ * <p>
+ * Printers that find no work anywhere wait on one shared condition,
+ * producers touch it only when there are such printers.
+ */
+class WorkStealingPrintQueue implements PrintQueue {
+
+    private final ReentrantLock idleLock = new ReentrantLock();
+    private final Condition workAvailable = idleLock.newCondition();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private Map<Printer, Local> locals;
+    private List<Local> all;
+
+    private volatile int idle;
+
+    @Override
+    public boolean respectsPaperSizes() {
+        return true;
+    }
+
+    @Override
+    public void attach(Collection<? extends Printer> printers) {
+        if (locals != null) {
+            throw new IllegalStateException("queue is already attached to printers");
+        }
+        var locals = new IdentityHashMap<Printer, Local>(printers.size());
+        var all = new ArrayList<Local>(printers.size());
+        for (Printer printer : printers) {
+            var local = new Local(printer.supportedPaperSizes());
+            locals.put(printer, local);
+            all.add(local);
+        }
+        this.all = all;
+        this.locals = locals;
+    }
+
+    @Override
+    public void put(PrintJob job) {
+        add(job);
+        signalIdle();
+    }
+
+    @Override
+    public void putAll(Collection<PrintJob> jobs) {
+        try {
+            for (PrintJob job : jobs) {
+                add(job);
+            }
+        } finally {
+            signalIdle();
+        }
+    }
+
+    /**
+     * The job is counted only once a printer is found for it, and before it is visible to printers,
+     * so {@link #size()} neither counts a rejected job nor goes below zero.
+     */
+    private void add(PrintJob job) {
+        var local = leastLoaded(job.document().paperSize());
+        size.incrementAndGet();
+        local.add(new Entry(sequence.getAndIncrement(), job));
+    }
+
+    private Local leastLoaded(PaperSize paperSize) {
+        if (all == null) {
+            throw new IllegalStateException("queue is not attached to printers");
+        }
+        Local least = null;
+        long leastWork = Long.MAX_VALUE;
+        for (Local local : all) {
+            if (!local.paperSizes.contains(paperSize)) {
+                continue;
+            }
+            long work = local.work();
+            if (least == null || work < leastWork) {
+                least = local;
+                leastWork = work;
+            }
+        }
+        if (least == null) {
+            throw new IllegalArgumentException("no printer supports paper size " + paperSize);
+        }
+        return least;
+    }
+
+    /**
+     * Idle printer increments {@link #idle} before it looks for work, and the job is added
+     * under the lock of a deque before {@link #idle} is read, so either the printer finds the job
+     * or the producer sees the printer.
+     */
+    private void signalIdle() {
+        if (idle > 0) {
+            idleLock.lock();
+            try {
+                workAvailable.signalAll();
+            } finally {
+                idleLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public PrintJob take(Printer printer) throws InterruptedException {
+        var local = localOf(printer);
+        var job = next(local);
+        if (job != null) {
+            return job;
+        }
+
+        idleLock.lockInterruptibly();
+        try {
+            idle++;
+            try {
+                while ((job = next(local)) == null) {
+                    workAvailable.await();
+                }
+                return job;
+            } finally {
+                idle--;
+            }
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    @Override
+    public PrintJob poll(Printer printer) {
+        return next(localOf(printer));
+    }
+
+    /**
+     * Looks only at the own deque of the printer, the run is not continued with stolen jobs.
+     */
+    @Override
+    public PrintJob pollIf(Printer printer, Predicate<PrintJob> condition) {
+        var local = localOf(printer);
+        var entry = local.pollFirstIf(condition);
+        if (entry == null) {
+            return null;
+        }
+        size.decrementAndGet();
+        local.printing(Durations.saturatedAdd(local.printingWork, entry.printNanos));
+        return entry.job;
+    }
+
+    private Local localOf(Printer printer) {
+        var local = locals != null ? locals.get(printer) : null;
+        if (local == null) {
+            throw new IllegalStateException("printer is not attached to the queue: " + printer);
+        }
+        return local;
+    }
+
+    private PrintJob next(Local local) {
+        var entry = local.pollFirst();
+        if (entry == null) {
+            entry = steal(local);
+        }
+        if (entry == null) {
+            local.printing(0);
+            return null;
+        }
+        size.decrementAndGet();
+        local.printing(entry.printNanos);
+        return entry.job;
+    }
+
+    /**
+     * Moves about half of the queued work of the busiest peer to the thief and returns the first moved job.
+     * Peers are tried in order of their queued work until one has a job of a paper size that the thief supports.
+     */
+    private Entry steal(Local thief) {
+        var tried = new boolean[all.size()];
+        while (true) {
+            int victim = -1;
+            long victimWork = 0;
+            for (int i = 0; i < all.size(); i++) {
+                var local = all.get(i);
+                if (tried[i] || local == thief || local.size == 0 || !local.supportsAnyOf(thief.paperSizes)) {
+                    continue;
+                }
+                long work = local.queuedWork;
+                if (victim == -1 || work > victimWork) {
+                    victim = i;
+                    victimWork = work;
+                }
+            }
+            if (victim == -1) {
+                return null;
+            }
+            tried[victim] = true;
+
+            var stolen = all.get(victim).stealFor(thief.paperSizes);
+            if (!stolen.isEmpty()) {
+                if (stolen.size() > 1) {
+                    thief.addAll(stolen.subList(1, stolen.size()));
+                }
+                return stolen.get(0);
+            }
+        }
+    }
+
+    @Override
+    public void drainTo(Collection<? super PrintJob> target) {
+        if (all == null) {
+            return;
+        }
+        List<Entry> entries = new ArrayList<>(size.get());
+        for (Local local : all) {
+            local.drainTo(entries);
+        }
+        size.addAndGet(-entries.size());
+        entries.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        entries.forEach(entry -> target.add(entry.job));
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    private static class Local {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Deque<Entry> deque = new ArrayDeque<>();
+        private final Set<PaperSize> paperSizes;
+
+        private volatile long queuedWork;
+        private volatile long printingWork;
+        private volatile int size;
+
+        private Local(Set<PaperSize> paperSizes) {
+            this.paperSizes = paperSizes;
+        }
+
+        long work() {
+            return Durations.saturatedAdd(queuedWork, printingWork);
+        }
+
+        void printing(long printNanos) {
+            if (printingWork != printNanos) {
+                printingWork = printNanos;
+            }
+        }
+
+        boolean supportsAnyOf(Set<PaperSize> paperSizes) {
+            for (PaperSize paperSize : paperSizes) {
+                if (this.paperSizes.contains(paperSize)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(Entry entry) {
+            lock.lock();
+            try {
+                push(entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void addAll(Collection<Entry> entries) {
+            lock.lock();
+            try {
+                entries.forEach(this::push);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void push(Entry entry) {
+            deque.addLast(entry);
+            queuedWork = Durations.saturatedAdd(queuedWork, entry.printNanos);
+            size = deque.size();
+        }
+
+        Entry pollFirst() {
+            if (size == 0) {
+                return null;
+            }
+            lock.lock();
+            try {
+                var entry = deque.pollFirst();
+                if (entry != null) {
+                    removed(entry);
+                }
+                return entry;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Entry pollFirstIf(Predicate<PrintJob> condition) {
+            if (size == 0) {
+                return null;
+            }
+            lock.lock();
+            try {
+                var entry = deque.peekFirst();
+                if (entry == null || !condition.test(entry.job)) {
+                    return null;
+                }
+                deque.pollFirst();
+                removed(entry);
+                return entry;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Takes jobs from the tail until about half of the queued work is taken, skipping jobs of paper sizes
+         * that the thief does not support.
+         */
+        List<Entry> stealFor(Set<PaperSize> paperSizes) {
+            List<Entry> stolen = new ArrayList<>();
+            lock.lock();
+            try {
+                long half = queuedWork / 2;
+                long taken = 0;
+                var it = deque.descendingIterator();
+                while (it.hasNext() && (stolen.isEmpty() || taken < half)) {
+                    var entry = it.next();
+                    if (paperSizes.contains(entry.job.document().paperSize())) {
+                        it.remove();
+                        removed(entry);
+                        stolen.add(entry);
+                        taken = Durations.saturatedAdd(taken, entry.printNanos);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            // stolen from the tail, the thief prints them in order of arrival
+            Collections.reverse(stolen);
+            return stolen;
+        }
+
+        private void removed(Entry entry) {
+            queuedWork = deque.isEmpty() ? 0 : queuedWork - entry.printNanos;
+            size = deque.size();
+        }
+
+        void drainTo(Collection<Entry> target) {
+            lock.lock();
+            try {
+                target.addAll(deque);
+                deque.clear();
+                queuedWork = 0;
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final long sequence;
+        private final PrintJob job;
+        private final long printNanos;
+
+        private Entry(long sequence, PrintJob job) {
+            this.sequence = sequence;
+            this.job = job;
+            this.printNanos = Durations.workNanos(job.document());
+        }
+    }
+}
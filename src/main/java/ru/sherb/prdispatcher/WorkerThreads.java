@@ -0,0 +1,40 @@
+package ru.sherb.prdispatcher;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread factories for workers of {@link DefaultPrintDispatcher}.
+ * Virtual threads are created through reflection, so the library is still built for Java 11
+ * and uses them only when it runs on Java 21 or later.
+ */
+final class WorkerThreads {
+
+    private static final String PREFIX = "print-worker-";
+
+    private WorkerThreads() {
+    }
+
+    static ThreadFactory platform() {
+        var counter = new AtomicLong();
+        return task -> new Thread(task, PREFIX + counter.getAndIncrement());
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    static ThreadFactory virtual() {
+        try {
+            var builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, PREFIX, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or later", e);
+        } catch (InvocationTargetException e) {
+            // e.g. virtual threads are a disabled preview feature
+            throw new UnsupportedOperationException("virtual threads are not available", e.getCause());
+        }
+    }
+}
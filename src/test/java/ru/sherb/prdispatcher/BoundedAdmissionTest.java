@@ -0,0 +1,34 @@
+package ru.sherb.prdispatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedAdmissionTest {
+
+    @Test
+    public void testShedVictimTakenByPrinterReleasesPlaceOnce() {
+        // Setup
+        var admission = new BoundedAdmission(PrintAdmission.unbounded().maxQueuedDocs(1).shedLowestPriority());
+        var taken = new PrintJob(new MockDocument().typeName("taken").priority(0));
+        admission.admit(List.of(taken));
+        // taken by a printer that has not released the place yet
+        assertTrue(taken.start());
+
+        // When
+        var high = new PrintJob(new MockDocument().typeName("high").priority(5));
+        var shed = admission.admit(List.of(high));
+        admission.release(taken);
+
+        // Then
+        assertEquals(List.of(), shed);
+        assertEquals(PrintJob.Status.PRINTING, taken.status());
+        var same = new PrintJob(new MockDocument().typeName("same").priority(5));
+        assertThrows(RejectedExecutionException.class, () -> admission.admit(List.of(same)));
+    }
+}
@@ -0,0 +1,120 @@
+package ru.sherb.prdispatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChangeoverPrintQueueTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    public void testGroupByPaperSizeOfPrinter() throws InterruptedException {
+        // Setup
+        var printer = new DryPrinter() {
+            @Override
+            public Duration changeoverCost() {
+                return Duration.ofSeconds(3);
+            }
+        };
+        var queue = new ChangeoverPrintQueue(Duration.ofMinutes(1), nanoTime::get);
+        var a4First = new MockDocument().typeName("a4-1").paperSize(PaperSize.A4);
+        var a3First = new MockDocument().typeName("a3-1").paperSize(PaperSize.A3);
+        var a4Second = new MockDocument().typeName("a4-2").paperSize(PaperSize.A4);
+        var a3Second = new MockDocument().typeName("a3-2").paperSize(PaperSize.A3);
+        queue.put(new PrintJob(a4First));
+        queue.put(new PrintJob(a3First));
+        queue.put(new PrintJob(a4Second));
+        queue.put(new PrintJob(a3Second));
+
+        // Expect
+        assertEquals(a4First, queue.take(printer).document());
+        assertEquals(a4Second, queue.take(printer).document());
+        assertEquals(a3First, queue.take(printer).document());
+        assertEquals(a3Second, queue.take(printer).document());
+        assertEquals(1, queue.changeoversSaved());
+        assertEquals(Duration.ofSeconds(3), queue.changeoverTimeSaved());
+    }
+
+    @Test
+    public void testStartWithCurrentPaperSizeOfPrinter() throws InterruptedException {
+        // Setup
+        var printer = new DryPrinter() {
+            @Override
+            public PaperSize currentPaperSize() {
+                return PaperSize.A3;
+            }
+
+            @Override
+            public Duration changeoverCost() {
+                return Duration.ofSeconds(3);
+            }
+        };
+        var queue = new ChangeoverPrintQueue(Duration.ofMinutes(1), nanoTime::get);
+        var a4 = new MockDocument().typeName("a4").paperSize(PaperSize.A4);
+        var a3 = new MockDocument().typeName("a3").paperSize(PaperSize.A3);
+        queue.put(new PrintJob(a4));
+        queue.put(new PrintJob(a3));
+
+        // Expect
+        assertEquals(a3, queue.take(printer).document());
+        assertEquals(a4, queue.take(printer).document());
+    }
+
+    @Test
+    public void testDocumentIsNotSkippedLongerThanMaxWait() throws InterruptedException {
+        // Setup
+        var printer = new DryPrinter() {
+            @Override
+            public Duration changeoverCost() {
+                return Duration.ofMinutes(1);
+            }
+        };
+        var queue = new ChangeoverPrintQueue(Duration.ofSeconds(1), nanoTime::get);
+        var a4First = new MockDocument().typeName("a4-1").paperSize(PaperSize.A4);
+        var a3 = new MockDocument().typeName("a3").paperSize(PaperSize.A3);
+        var a4Second = new MockDocument().typeName("a4-2").paperSize(PaperSize.A4);
+        queue.put(new PrintJob(a4First));
+        queue.put(new PrintJob(a3));
+        queue.put(new PrintJob(a4Second));
+        queue.take(printer);
+
+        // When
+        nanoTime.addAndGet(Duration.ofSeconds(2).toNanos());
+
+        // Then
+        assertEquals(a3, queue.take(printer).document());
+        assertEquals(a4Second, queue.take(printer).document());
+        assertEquals(0, queue.changeoversSaved());
+    }
+
+    @Test
+    public void testDocumentIsNotSkippedLongerThanChangeoverCost() throws InterruptedException {
+        // Setup
+        var printer = new DryPrinter() {
+            @Override
+            public Duration changeoverCost() {
+                return Duration.ofSeconds(1);
+            }
+        };
+        var queue = new ChangeoverPrintQueue(Duration.ofMinutes(1), nanoTime::get);
+        var a4First = new MockDocument().typeName("a4-1").paperSize(PaperSize.A4);
+        var a3 = new MockDocument().typeName("a3").paperSize(PaperSize.A3);
+        var a4Second = new MockDocument().typeName("a4-2").paperSize(PaperSize.A4);
+        queue.put(new PrintJob(a4First));
+        queue.put(new PrintJob(a3));
+        queue.put(new PrintJob(a4Second));
+        queue.take(printer);
+
+        // When
+        nanoTime.addAndGet(Duration.ofSeconds(2).toNanos());
+
+        // Then
+        assertEquals(a3, queue.take(printer).document());
+        assertEquals(a4Second, queue.take(printer).document());
+        assertEquals(0, queue.changeoversSaved());
+    }
+}
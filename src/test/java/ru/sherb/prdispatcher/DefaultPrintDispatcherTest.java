@@ -1,19 +1,46 @@
 package ru.sherb.prdispatcher;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
 import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TransferQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author maksim
@@ -128,6 +155,30 @@ class DefaultPrintDispatcherTest {
         printDispatcher.stop();
     }
 
+    @Test
+    public void testCancelQueuedDoc() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var printing = new MockDocument().typeName("printing");
+        var cancelled = new MockDocument().typeName("cancelled");
+        var printed = new MockDocument().typeName("printed");
+        printDispatcher.print(printing);
+        printDispatcher.print(cancelled);
+        var printedJob = printDispatcher.print(printed);
+        printer.waitForStartPrinting();
+
+        // When
+        var actual = printDispatcher.cancel("cancelled");
+
+        // Then
+        assertEquals(cancelled, actual);
+        assertEquals(printing, printer.printedDocument());
+        assertEquals(printed, printer.printedDocument());
+        printedJob.completion().get();
+        assertEquals(List.of(), printDispatcher.stop());
+    }
+
     @Test
     public void testSuccessPrintAfterCancelDoc() throws InterruptedException {
         // Setup
@@ -159,10 +210,10 @@ class DefaultPrintDispatcherTest {
         var first = new MockDocument().typeName("a");
         var second = new MockDocument().typeName("b");
         printDispatcher.print(first);
-        printDispatcher.print(second);
+        var last = printDispatcher.print(second);
         printer.skip();
         printer.skip();
-        printDispatcher.action("b").waitForFinish();
+        last.completion().get();
 
         // When
         var printedList = printDispatcher.printedDocs();
@@ -183,10 +234,10 @@ class DefaultPrintDispatcherTest {
         var printDispatcher = new DefaultPrintDispatcher(printer);
         var printed = new MockDocument().typeName("a");
         var notPrinted = new MockDocument().typeName("b");
-        printDispatcher.print(printed);
+        var printedJob = printDispatcher.print(printed);
         printDispatcher.print(notPrinted);
         printer.skip();
-        printDispatcher.action("a").waitForFinish();
+        printedJob.completion().get();
         printer.waitForStartPrinting();
         printDispatcher.cancel("b");
 
@@ -238,11 +289,11 @@ class DefaultPrintDispatcherTest {
 
         printDispatcher.print(first);
         printDispatcher.print(second);
-        printDispatcher.print(third);
+        var last = printDispatcher.print(third);
         printer.skip();
         printer.skip();
         printer.skip();
-        printDispatcher.action("c").waitForFinish();
+        last.completion().get();
 
         // When
         var paperSizeSorted = printDispatcher.printedDocs(Comparator.comparing(Document::paperSize));
@@ -275,6 +326,51 @@ class DefaultPrintDispatcherTest {
         printDispatcher.stop();
     }
 
+    @Test
+    public void testPrintedDocsPages() throws InterruptedException, ExecutionException {
+        printedDocsPages(DefaultPrintDispatcher.builder());
+    }
+
+    @Test
+    public void testIndexedPrintedDocsPages() throws InterruptedException, ExecutionException {
+        printedDocsPages(DefaultPrintDispatcher.builder().indexPrintedDocs());
+    }
+
+    private static void printedDocsPages(DefaultPrintDispatcher.Builder builder) throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = builder
+                .printer(printer)
+                .history(HistoryRetention.unlimited().maxEntries(4))
+                .build();
+        var forgotten = new MockDocument().typeName("forgotten").printDuration(Duration.ofSeconds(9));
+        var a = new MockDocument().typeName("a").paperSize(PaperSize.A4).printDuration(Duration.ofSeconds(3));
+        var b = new MockDocument().typeName("b").paperSize(PaperSize.A3).printDuration(Duration.ofSeconds(1));
+        var c = new MockDocument().typeName("c").paperSize(PaperSize.A4).printDuration(Duration.ofSeconds(2));
+        var d = new MockDocument().typeName("d").paperSize(PaperSize.A4).printDuration(Duration.ofSeconds(1));
+
+        // When
+        for (Document document : List.of(forgotten, a, b, c, d)) {
+            var job = printDispatcher.print(document);
+            printer.skip();
+            job.completion().get();
+        }
+
+        // Then
+        assertEquals(List.of(d, c), printDispatcher.printedDocs(PrintedQuery.byCompletionTime().reversed().limit(2)));
+        assertEquals(List.of(b, d, c), printDispatcher.printedDocs(PrintedQuery.byPrintDuration().limit(3)));
+        assertEquals(List.of(a), printDispatcher.printedDocs(PrintedQuery.byPrintDuration().reversed().limit(1)));
+        assertEquals(List.of(c), printDispatcher.printedDocs(PrintedQuery.byPrintDuration()
+                                                                         .reversed()
+                                                                         .paperSize(PaperSize.A4)
+                                                                         .offset(1)
+                                                                         .limit(1)));
+        assertEquals(List.of(), printDispatcher.printedDocs(PrintedQuery.byCompletionTime().paperSize(PaperSize.A5)));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
     @Test
     public void testCorrectCalcPrintDurationAvg() throws InterruptedException, ExecutionException {
         // Setup
@@ -288,10 +384,10 @@ class DefaultPrintDispatcherTest {
                 .printDuration(Duration.ofSeconds(2));
 
         printDispatcher.print(first);
-        printDispatcher.print(second);
+        var last = printDispatcher.print(second);
         printer.skip();
         printer.skip();
-        printDispatcher.action("second").waitForFinish();
+        last.completion().get();
 
         // When
         var avg = printDispatcher.calcAvgPrintDuration();
@@ -303,14 +399,1263 @@ class DefaultPrintDispatcherTest {
         printDispatcher.stop();
     }
 
-    private static class MockPrinter implements Printer {
+    @Test
+    public void testCalcSubSecondPrintDurationAvg() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var first = new MockDocument()
+                .typeName("first")
+                .printDuration(Duration.ofMillis(100));
+        var second = new MockDocument()
+                .typeName("second")
+                .printDuration(Duration.ofMillis(200));
 
-        private final TransferQueue<Document> queue = new LinkedTransferQueue<>();
+        printDispatcher.print(first);
+        var last = printDispatcher.print(second);
+        printer.skip();
+        printer.skip();
+        last.completion().get();
 
-        private volatile boolean cancelled = false;
+        // When
+        var avg = printDispatcher.calcAvgPrintDuration();
 
-        private volatile CountDownLatch startPrintingNotifier = new CountDownLatch(1);
-        private volatile CountDownLatch cancelPrintingNotifier = new CountDownLatch(1);
+        // Then
+        assertEquals(150, avg.toMillis());
+        assertEquals(2, printDispatcher.statistics().count());
+        assertEquals(Duration.ofMillis(100).toNanos(), printDispatcher.statistics().minNanos());
+        assertEquals(Duration.ofMillis(200).toNanos(), printDispatcher.statistics().maxNanos());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testPrintDocWithNegativePrintDuration() throws InterruptedException, ExecutionException {
+        // Setup
+        var printDispatcher = new DefaultPrintDispatcher(new DryPrinter());
+        var negative = new MockDocument().typeName("negative").printDuration(Duration.ofSeconds(-1));
+        var next = new MockDocument().typeName("next");
+
+        // When
+        var negativeJob = printDispatcher.print(negative);
+        var nextJob = printDispatcher.print(next);
+        nextJob.completion().get();
+
+        // Then
+        assertEquals(PrintJob.Status.PRINTED, negativeJob.status());
+        assertEquals(List.of(negative, next), printDispatcher.printedDocs());
+        assertEquals(Duration.ZERO, printDispatcher.calcAvgPrintDuration());
+        assertTrue(printDispatcher.stop().isEmpty());
+    }
+
+    @Test
+    public void testPrintDocsWithSameTypeName() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var first = new MockDocument().typeName("invoice").printDuration(Duration.ofSeconds(1));
+        var second = new MockDocument().typeName("invoice").printDuration(Duration.ofSeconds(2));
+        var firstJob = printDispatcher.print(first);
+        var secondJob = printDispatcher.print(second);
+        printer.skip();
+        printer.skip();
+        secondJob.completion().get();
+
+        // When
+        var printedList = printDispatcher.printedDocs();
+
+        // Then
+        assertEquals(List.of(first, second), printedList);
+        assertEquals(PrintJob.Status.PRINTED, printDispatcher.status(firstJob.id()));
+        assertEquals(PrintJob.Status.PRINTED, printDispatcher.status(secondJob.id()));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testCancelByJobId() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var first = new MockDocument().typeName("invoice").printDuration(Duration.ofSeconds(1));
+        var second = new MockDocument().typeName("invoice").printDuration(Duration.ofSeconds(2));
+        var firstJob = printDispatcher.print(first);
+        var secondJob = printDispatcher.print(second);
+        printer.waitForStartPrinting();
+
+        // When
+        var cancelled = printDispatcher.cancel(firstJob.id());
+
+        // Then
+        assertTrue(cancelled);
+        assertThrows(CancellationException.class, () -> firstJob.completion().get());
+        assertEquals(PrintJob.Status.ABORTED, printDispatcher.status(firstJob.id()));
+        assertEquals(second, printer.printedDocument());
+        assertEquals(second, secondJob.completion().get());
+        assertFalse(printDispatcher.cancel(secondJob.id()));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testMetricsCountJobEvents() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var metrics = new InMemoryPrintMetrics();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .metrics(metrics)
+                .build();
+        var aborted = printDispatcher.print(new MockDocument().typeName("aborted"));
+        var cancelled = printDispatcher.print(new MockDocument().typeName("cancelled"));
+        var printed = printDispatcher.print(new MockDocument().typeName("printed"));
+        printer.waitForStartPrinting();
+
+        // When
+        printDispatcher.cancel(cancelled.id());
+        printDispatcher.cancel(aborted.id());
+        printer.printedDocument();
+        printed.completion().get();
+
+        // Then
+        var snapshot = metrics.snapshot();
+        assertEquals(0, snapshot.queueDepth());
+        assertEquals(3, snapshot.queued());
+        assertEquals(2, snapshot.started());
+        assertEquals(1, snapshot.dropped());
+        assertEquals(1, snapshot.printed());
+        assertEquals(1, snapshot.notPrinted());
+        assertEquals(2, snapshot.cancelled());
+        assertEquals(1, snapshot.aborted());
+        assertEquals(2, metrics.waitTime().count());
+        assertEquals(2, metrics.serviceTime().count());
+        assertTrue(snapshot.utilization(printer) > 0);
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testMetricsCountCancelByHandleOnce() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var metrics = new InMemoryPrintMetrics();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .metrics(metrics)
+                .build();
+        var aborted = printDispatcher.print(new MockDocument().typeName("aborted"));
+        var cancelled = printDispatcher.print(new MockDocument().typeName("cancelled"));
+        printer.waitForStartPrinting();
+
+        // When
+        assertTrue(cancelled.cancel());
+        assertTrue(aborted.cancel());
+        assertFalse(printDispatcher.cancel(cancelled.id()));
+        aborted.cancel();
+        printDispatcher.cancel("aborted");
+
+        // Then
+        assertEquals(2, metrics.snapshot().cancelled());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testPublishJobEvents() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var subscriber = new EventSubscriber(Long.MAX_VALUE);
+        printDispatcher.events().subscribe(subscriber);
+        var printed = printDispatcher.print(new MockDocument().typeName("printed"));
+        var cancelled = printDispatcher.print(new MockDocument().typeName("cancelled"));
+        printer.waitForStartPrinting();
+
+        // When
+        printDispatcher.cancel("cancelled");
+        printer.printedDocument();
+        printed.completion().get();
+        printDispatcher.stop();
+
+        // Then
+        assertTrue(subscriber.completed.await(1, TimeUnit.SECONDS));
+        assertEquals(List.of(PrintJob.Status.QUEUED, PrintJob.Status.PRINTING, PrintJob.Status.PRINTED),
+                subscriber.statuses(printed));
+        assertEquals(List.of(PrintJob.Status.QUEUED, PrintJob.Status.ABORTED),
+                subscriber.statuses(cancelled));
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotStallPrint() throws InterruptedException, ExecutionException {
+        // Setup
+        var metrics = new InMemoryPrintMetrics();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(new DryPrinter())
+                .metrics(metrics)
+                .events(Runnable::run, 1)
+                .build();
+        printDispatcher.events().subscribe(new EventSubscriber(0));
+        var docs = Stream.generate(() -> new MockDocument().printDuration(Duration.ZERO))
+                .limit(10)
+                .collect(Collectors.toList());
+
+        // When
+        var jobs = printDispatcher.printAll(docs);
+        jobs.get(jobs.size() - 1).completion().get();
+
+        // Then
+        assertEquals(docs.size(), metrics.snapshot().printed());
+        assertTrue(metrics.snapshot().eventsDropped() > 0);
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws InterruptedException {
+        // Setup
+        var printer = new MockPrinter();
+        var metrics = new InMemoryPrintMetrics();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .metrics(metrics)
+                .admission(PrintAdmission.unbounded().maxQueuedDocs(1).reject())
+                .build();
+        printDispatcher.print(new MockDocument().typeName("printing"));
+        printer.waitForStartPrinting();
+        printDispatcher.print(new MockDocument().typeName("queued"));
+
+        // Expect
+        assertThrows(RejectedExecutionException.class, () -> printDispatcher.print(new MockDocument().typeName("rejected")));
+        assertEquals(1, metrics.snapshot().rejected());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testAdmitByQueuedPrintDuration() throws InterruptedException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .admission(PrintAdmission.unbounded().maxQueuedWork(Duration.ofSeconds(10)).reject())
+                .build();
+        printDispatcher.print(new MockDocument().typeName("printing").printDuration(Duration.ofMinutes(1)));
+        printer.waitForStartPrinting();
+        var sixSeconds = new MockDocument().typeName("6").printDuration(Duration.ofSeconds(6));
+        var fiveSeconds = new MockDocument().typeName("5").printDuration(Duration.ofSeconds(5));
+        var fourSeconds = new MockDocument().typeName("4").printDuration(Duration.ofSeconds(4));
+
+        // When
+        printDispatcher.print(sixSeconds);
+        assertThrows(RejectedExecutionException.class, () -> printDispatcher.print(fiveSeconds));
+        printDispatcher.print(fourSeconds);
+
+        // Then
+        assertEquals(List.of(sixSeconds, fourSeconds), printDispatcher.stop().subList(1, 3));
+    }
+
+    @Test
+    public void testBlockedPrintIsAdmittedWhenPlaceIsFreed() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .admission(PrintAdmission.unbounded().maxQueuedDocs(1).block(Duration.ofSeconds(10)))
+                .build();
+        printDispatcher.print(new MockDocument().typeName("printing"));
+        printer.waitForStartPrinting();
+        printDispatcher.print(new MockDocument().typeName("cancelled"));
+        var blocked = CompletableFuture.supplyAsync(() -> printDispatcher.print(new MockDocument().typeName("blocked")));
+
+        // When
+        Thread.sleep(50);
+        assertFalse(blocked.isDone());
+        printDispatcher.cancel("cancelled");
+
+        // Then
+        assertEquals(PrintJob.Status.QUEUED, blocked.get().status());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testStopRejectsBlockedPrint() throws InterruptedException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .admission(PrintAdmission.unbounded().maxQueuedDocs(1).block(Duration.ofMinutes(1)))
+                .build();
+        printDispatcher.print(new MockDocument().typeName("printing"));
+        printer.waitForStartPrinting();
+        printDispatcher.print(new MockDocument().typeName("queued"));
+        var blocked = CompletableFuture.supplyAsync(() -> printDispatcher.print(new MockDocument().typeName("blocked")));
+        Thread.sleep(50);
+
+        // When
+        printDispatcher.stop();
+
+        // Then
+        var e = assertThrows(ExecutionException.class, () -> blocked.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+
+    @Test
+    public void testShedLowestPriorityToAdmitHigher() throws InterruptedException {
+        // Setup
+        var printer = new MockPrinter();
+        var metrics = new InMemoryPrintMetrics();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .metrics(metrics)
+                .admission(PrintAdmission.unbounded().maxQueuedDocs(2).shedLowestPriority())
+                .build();
+        printDispatcher.print(new MockDocument().typeName("printing"));
+        printer.waitForStartPrinting();
+        var low = printDispatcher.print(new MockDocument().typeName("low").priority(0));
+        var middle = printDispatcher.print(new MockDocument().typeName("middle").priority(1));
+
+        // When
+        var high = printDispatcher.print(new MockDocument().typeName("high").priority(5));
+
+        // Then
+        assertEquals(PrintJob.Status.ABORTED, low.status());
+        assertEquals(PrintJob.Status.QUEUED, middle.status());
+        assertEquals(PrintJob.Status.QUEUED, high.status());
+        assertEquals(1, metrics.snapshot().shed());
+        assertThrows(RejectedExecutionException.class,
+                () -> printDispatcher.print(new MockDocument().typeName("lowest").priority(-1)));
+        assertEquals(PrintJob.Status.QUEUED, middle.status());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testReleasePlaceWhenJournalFails(@TempDir Path dir) throws InterruptedException {
+        // Setup
+        var codec = new DocumentCodec() {
+            @Override
+            public void encode(Document document, DataOutput out) throws IOException {
+                if (document.typeName().equals("broken")) {
+                    throw new IOException("can not encode");
+                }
+                DocumentCodec.standard().encode(document, out);
+            }
+
+            @Override
+            public Document decode(DataInput in) throws IOException {
+                return DocumentCodec.standard().decode(in);
+            }
+        };
+        var printer = new MockPrinter();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .journal(PrintJournal.of(dir.resolve("print.journal")).codec(codec))
+                .admission(PrintAdmission.unbounded().maxQueuedDocs(1).reject())
+                .build();
+        printDispatcher.print(new MockDocument().typeName("printing"));
+        printer.waitForStartPrinting();
+
+        // When
+        assertThrows(UncheckedIOException.class, () -> printDispatcher.print(new MockDocument().typeName("broken")));
+        assertThrows(UncheckedIOException.class, () -> printDispatcher.printAll(List.of(new MockDocument().typeName("broken"))));
+
+        // Then
+        var queued = printDispatcher.print(new MockDocument().typeName("queued"));
+        assertEquals(PrintJob.Status.QUEUED, queued.status());
+        assertNull(printDispatcher.cancel("broken"));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testStopWaitsForSubmissionWithoutSpinning(@TempDir Path dir) throws InterruptedException, ExecutionException {
+        // Setup
+        var encoding = new CountDownLatch(1);
+        var encoded = new CountDownLatch(1);
+        var codec = new DocumentCodec() {
+            @Override
+            public void encode(Document document, DataOutput out) throws IOException {
+                encoding.countDown();
+                try {
+                    encoded.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                DocumentCodec.standard().encode(document, out);
+            }
+
+            @Override
+            public Document decode(DataInput in) throws IOException {
+                return DocumentCodec.standard().decode(in);
+            }
+        };
+        var worker = new LinkedTransferQueue<Thread>();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(new MockPrinter())
+                .journal(PrintJournal.of(dir.resolve("print.journal")).codec(codec))
+                .threadFactory(task -> {
+                    var thread = new Thread(task);
+                    worker.add(thread);
+                    return thread;
+                })
+                .build();
+        var document = new MockDocument().typeName("slow");
+        var producer = new Thread(() -> printDispatcher.print(document));
+        producer.start();
+        encoding.await();
+
+        // When
+        var notPrinted = new CompletableFuture<List<Document>>();
+        var stopping = new Thread(() -> notPrinted.complete(printDispatcher.stop()));
+        stopping.start();
+
+        // Then
+        // the last worker or the stopping thread terminates the dispatcher
+        var terminators = List.of(worker.take(), stopping);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (terminators.stream().noneMatch(thread -> LockSupport.getBlocker(thread) == printDispatcher)) {
+                Thread.sleep(1);
+            }
+        });
+        assertFalse(notPrinted.isDone());
+        encoded.countDown();
+        assertEquals(List.of(document), notPrinted.get());
+        producer.join();
+    }
+
+    @Test
+    public void testCoalesceSameTypeAndPaperSize() throws InterruptedException, ExecutionException {
+        // Setup
+        var runs = new LinkedTransferQueue<List<Document>>();
+        var printer = new MockPrinter() {
+            @Override
+            public void printAll(List<Document> documents, Consumer<Document> printed) throws InterruptedException {
+                runs.add(documents);
+                super.printAll(documents, printed);
+            }
+        };
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .coalescing(PrintCoalescing.disabled().maxDocs(10))
+                .build();
+        printDispatcher.print(new MockDocument().typeName("blocker"));
+        printer.waitForStartPrinting();
+        var reprint = new MockDocument().typeName("reprint");
+        var other = new MockDocument().typeName("reprint").paperSize(PaperSize.A3);
+        var jobs = printDispatcher.printAll(List.of(reprint, reprint, reprint, other, reprint));
+
+        // When
+        for (int i = 0; i < 6; i++) {
+            printer.printedDocument();
+        }
+        for (PrintJob job : jobs) {
+            job.completion().get();
+        }
+
+        // Then
+        assertEquals(List.of(List.of(reprint, reprint, reprint)), List.copyOf(runs));
+        assertTrue(jobs.stream().allMatch(job -> job.status() == PrintJob.Status.PRINTED));
+        assertEquals(6, printDispatcher.printedDocs().size());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testCoalesceWithinMaxWork() throws InterruptedException, ExecutionException {
+        // Setup
+        var runs = new LinkedTransferQueue<List<Document>>();
+        var printer = new MockPrinter() {
+            @Override
+            public void printAll(List<Document> documents, Consumer<Document> printed) throws InterruptedException {
+                runs.add(documents);
+                super.printAll(documents, printed);
+            }
+        };
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .coalescing(PrintCoalescing.disabled().maxDocs(10).maxWork(Duration.ofSeconds(2)))
+                .build();
+        printDispatcher.print(new MockDocument().typeName("blocker"));
+        printer.waitForStartPrinting();
+        var reprint = new MockDocument().typeName("reprint").printDuration(Duration.ofSeconds(1));
+        var jobs = printDispatcher.printAll(List.of(reprint, reprint, reprint));
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            printer.printedDocument();
+        }
+        for (PrintJob job : jobs) {
+            job.completion().get();
+        }
+
+        // Then
+        assertEquals(List.of(List.of(reprint, reprint)), List.copyOf(runs));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testCancelNotReachedDocsOfRun() throws InterruptedException, ExecutionException {
+        // Setup
+        var runs = new LinkedTransferQueue<List<Document>>();
+        var stops = new AtomicInteger();
+        var printer = new RunPrinter(runs, stops);
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .coalescing(PrintCoalescing.disabled().maxDocs(10))
+                .build();
+        printDispatcher.print(new MockDocument().typeName("blocker"));
+        printer.waitForStartPrinting();
+        var documents = IntStream.range(0, 4)
+                .mapToObj(i -> new MockDocument().typeName("reprint").printDuration(Duration.ofSeconds(i)))
+                .collect(Collectors.toList());
+        var jobs = printDispatcher.printAll(documents);
+        printer.printedDocument();
+        awaitStatus(jobs.get(3), PrintJob.Status.PRINTING);
+
+        // When
+        assertTrue(jobs.get(1).cancel());
+        assertTrue(jobs.get(3).cancel());
+        var printed = new ArrayList<Document>();
+        Document document;
+        while ((document = printer.printedDocument()) != null) {
+            printed.add(document);
+        }
+        jobs.get(0).completion().get();
+        jobs.get(2).completion().get();
+        awaitStatus(jobs.get(3), PrintJob.Status.ABORTED);
+
+        // Then
+        assertEquals(List.of(PrintJob.Status.PRINTED, PrintJob.Status.ABORTED, PrintJob.Status.PRINTED, PrintJob.Status.ABORTED),
+                jobs.stream().map(PrintJob::status).collect(Collectors.toList()));
+        assertEquals(List.of(documents.get(0), documents.get(2)), printed);
+        assertEquals(List.of(documents, List.of(documents.get(2))), List.copyOf(runs));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testCancelPrintingDocOfRun() throws InterruptedException, ExecutionException {
+        // Setup
+        var runs = new LinkedTransferQueue<List<Document>>();
+        var stops = new AtomicInteger();
+        var printer = new RunPrinter(runs, stops);
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .coalescing(PrintCoalescing.disabled().maxDocs(10))
+                .build();
+        printDispatcher.print(new MockDocument().typeName("blocker"));
+        printer.waitForStartPrinting();
+        var reprint = new MockDocument().typeName("reprint");
+        var jobs = printDispatcher.printAll(List.of(reprint, reprint, reprint));
+        printer.printedDocument();
+        awaitStatus(jobs.get(2), PrintJob.Status.PRINTING);
+
+        // When
+        assertTrue(jobs.get(0).cancel());
+        // the aborted print may be taken too
+        for (int i = 0; i < 10 && jobs.get(2).status() != PrintJob.Status.PRINTED; i++) {
+            printer.printedDocument();
+        }
+        jobs.get(1).completion().get();
+        jobs.get(2).completion().get();
+
+        // Then
+        assertEquals(PrintJob.Status.ABORTED, jobs.get(0).status());
+        assertEquals(1, stops.get());
+        assertEquals(List.of(List.of(reprint, reprint, reprint), List.of(reprint, reprint)), List.copyOf(runs));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testPrinterFailureAbortsOnlyFailedDoc() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter() {
+            @Override
+            public void print(Document document) throws InterruptedException {
+                if (document.typeName().equals("broken")) {
+                    throw new IllegalStateException("paper jam");
+                }
+                super.print(document);
+            }
+        };
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var broken = new MockDocument().typeName("broken");
+        var printed = new MockDocument().typeName("printed");
+
+        // When
+        var brokenJob = printDispatcher.print(broken);
+        var printedJob = printDispatcher.print(printed);
+
+        // Then
+        assertEquals(printed, printer.printedDocument());
+        assertEquals(printed, printedJob.completion().get());
+        assertThrows(CancellationException.class, () -> brokenJob.completion().get());
+        assertEquals(List.of(printed), printDispatcher.printedDocs());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testPrintOnThreadOfFactory() throws InterruptedException, ExecutionException {
+        // Setup
+        var printingThread = new LinkedTransferQueue<Thread>();
+        Printer printer = new MockPrinter() {
+            @Override
+            public void print(Document document) {
+                printingThread.add(Thread.currentThread());
+            }
+        };
+        var created = new LinkedTransferQueue<Thread>();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .threadFactory(task -> {
+                    var thread = new Thread(task, "custom");
+                    created.add(thread);
+                    return thread;
+                })
+                .build();
+
+        // When
+        printDispatcher.print(new MockDocument().typeName("doc")).completion().get();
+
+        // Then
+        assertEquals(created.poll(), printingThread.poll());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testPrintAllInOrder() throws InterruptedException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var documents = Stream
+                .iterate(0, i -> i + 1)
+                .limit(5)
+                .map(i -> new MockDocument().typeName(String.valueOf(i)))
+                .collect(Collectors.toList());
+
+        // When
+        var jobs = printDispatcher.printAll(documents);
+
+        // Then
+        assertEquals(documents, jobs.stream().map(PrintJob::document).collect(Collectors.toList()));
+        for (Document document : documents) {
+            assertEquals(document, printer.printedDocument());
+        }
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testRejectPrintAfterStop() {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        printDispatcher.stop();
+
+        // Expect
+        var document = new MockDocument().typeName("late");
+        assertThrows(RejectedExecutionException.class, () -> printDispatcher.print(document));
+        assertThrows(RejectedExecutionException.class, () -> printDispatcher.printAll(List.of(document)));
+    }
+
+    @Test
+    public void testPrintOnAllPrintersOfPool() throws InterruptedException {
+        // Setup
+        var first = new MockPrinter();
+        var second = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(List.of(first, second));
+        var a = new MockDocument().typeName("a");
+        var b = new MockDocument().typeName("b");
+
+        // When
+        printDispatcher.print(a);
+        printDispatcher.print(b);
+        first.waitForStartPrinting();
+        second.waitForStartPrinting();
+
+        // Then
+        assertEquals(Set.of(a, b), Set.of(first.printedDocument(), second.printedDocument()));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testPrintOnPoolWithLockFreeQueue() throws InterruptedException, ExecutionException {
+        // Setup
+        var first = new MockPrinter();
+        var second = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(List.of(first, second), PrintQueue.lockFree());
+        var documents = Stream.iterate(0, i -> i + 1)
+                              .limit(10)
+                              .map(i -> new MockDocument().typeName(String.valueOf(i)))
+                              .collect(Collectors.toList());
+
+        // When
+        var jobs = printDispatcher.printAll(documents);
+        var printed = new ArrayList<Document>();
+        for (int i = 0; i < documents.size(); i++) {
+            var document = first.printedDocument();
+            printed.add(document != null ? document : second.printedDocument());
+        }
+        for (PrintJob job : jobs) {
+            job.completion().get();
+        }
+
+        // Then
+        assertEquals(Set.copyOf(documents), Set.copyOf(printed));
+        assertTrue(printDispatcher.stop().isEmpty());
+    }
+
+    @Test
+    public void testCoalesceOnPoolWithLockFreeQueue() throws InterruptedException, ExecutionException, TimeoutException {
+        // Setup
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printers(List.of(new DryPrinter(), new DryPrinter()))
+                .queue(PrintQueue.lockFree())
+                .coalescing(PrintCoalescing.disabled().maxDocs(10))
+                .build();
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            // an idle printer must not delay the printer that looks for more documents of its run
+            printDispatcher.print(new MockDocument().typeName("reprint")).completion().get(1, TimeUnit.SECONDS);
+        }
+
+        // Then
+        assertEquals(20, printDispatcher.printedDocs().size());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testPrintOnPoolWithWorkStealingQueue() throws InterruptedException, ExecutionException {
+        // Setup
+        var first = new MockPrinter();
+        var second = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(List.of(first, second), PrintQueue.workStealing());
+        var documents = Stream.iterate(0, i -> i + 1)
+                              .limit(10)
+                              .map(i -> new MockDocument().typeName(String.valueOf(i)))
+                              .collect(Collectors.toList());
+
+        // When
+        var jobs = printDispatcher.printAll(documents);
+        var printed = new ArrayList<Document>();
+        for (int i = 0; i < documents.size(); i++) {
+            var document = first.printedDocument();
+            printed.add(document != null ? document : second.printedDocument());
+        }
+        for (PrintJob job : jobs) {
+            job.completion().get();
+        }
+
+        // Then
+        assertEquals(Set.copyOf(documents), Set.copyOf(printed));
+        assertTrue(printDispatcher.stop().isEmpty());
+    }
+
+    @Test
+    public void testStopPoolReturnsAllNotPrintedDocs() throws InterruptedException {
+        // Setup
+        var first = new MockPrinter();
+        var second = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(List.of(first, second));
+        var a = new MockDocument().typeName("a");
+        var b = new MockDocument().typeName("b");
+        var c = new MockDocument().typeName("c");
+        printDispatcher.print(a);
+        printDispatcher.print(b);
+        printDispatcher.print(c);
+        first.waitForStartPrinting();
+        second.waitForStartPrinting();
+
+        // When
+        var actualDocs = printDispatcher.stop();
+
+        // Then
+        assertEquals(3, actualDocs.size(), actualDocs::toString);
+        assertEquals(Set.of(a, b, c), Set.copyOf(actualDocs));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testStopDoesNotReturnDocCancelledBefore() throws InterruptedException, ExecutionException {
+        // Setup
+        var started = new CountDownLatch(1);
+        var released = new CountDownLatch(1);
+        Printer printer = new MockPrinter() {
+            @Override
+            public void print(Document document) {
+                started.countDown();
+                // the print is not aborted before the dispatcher is stopped
+                while (released.getCount() > 0) {
+                    try {
+                        released.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        };
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var document = new MockDocument().typeName("cancelled");
+        printDispatcher.print(document);
+        started.await();
+
+        // When
+        assertEquals(document, printDispatcher.cancel(document.typeName()));
+        var notPrinted = printDispatcher.stopAsync(DefaultPrintDispatcher.StopMode.ABORT_PRINTING);
+        released.countDown();
+
+        // Then
+        assertEquals(List.of(), notPrinted.get());
+    }
+
+    @Test
+    public void testStopFinishesPrintingDoc() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var first = new MockDocument().typeName("first");
+        var second = new MockDocument().typeName("second");
+        printDispatcher.print(first);
+        printDispatcher.print(second);
+        printer.waitForStartPrinting();
+
+        // When
+        var notPrinted = printDispatcher.stopAsync(DefaultPrintDispatcher.StopMode.FINISH_PRINTING);
+
+        // Then
+        assertFalse(printDispatcher.awaitTermination(Duration.ofMillis(100)));
+        assertEquals(first, printer.printedDocument());
+        assertTrue(printDispatcher.awaitTermination(Duration.ofSeconds(1)));
+        assertTrue(printDispatcher.isTerminated());
+        assertEquals(List.of(second), notPrinted.get());
+        assertEquals(List.of(first), printDispatcher.printedDocs());
+    }
+
+    @Test
+    public void testEscalateStopToAbort() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = new DefaultPrintDispatcher(printer);
+        var first = new MockDocument().typeName("first");
+        var second = new MockDocument().typeName("second");
+        printDispatcher.print(first);
+        printDispatcher.print(second);
+        printer.waitForStartPrinting();
+        printDispatcher.stopAsync(DefaultPrintDispatcher.StopMode.FINISH_PRINTING);
+
+        // When
+        var notPrinted = printDispatcher.stopAsync(DefaultPrintDispatcher.StopMode.ABORT_PRINTING);
+
+        // Then
+        assertEquals(List.of(first, second), notPrinted.get());
+        assertTrue(printDispatcher.awaitTermination(Duration.ZERO));
+    }
+
+    @Test
+    public void testPaperSizeQueueNotBlockedByOtherPaperSize() throws InterruptedException {
+        // Setup
+        var a3Printer = new MockPrinter(PaperSize.A3);
+        var a4Printer = new MockPrinter(PaperSize.A4);
+        var printDispatcher = new DefaultPrintDispatcher(List.of(a3Printer, a4Printer), PrintQueue.byPaperSize());
+        var firstA3 = new MockDocument().typeName("first a3").paperSize(PaperSize.A3);
+        var secondA3 = new MockDocument().typeName("second a3").paperSize(PaperSize.A3);
+        var a4 = new MockDocument().typeName("a4").paperSize(PaperSize.A4);
+        printDispatcher.print(firstA3);
+        a3Printer.waitForStartPrinting();
+
+        // When
+        printDispatcher.print(secondA3);
+        printDispatcher.print(a4);
+
+        // Then
+        assertEquals(a4, a4Printer.printedDocument());
+        assertEquals(firstA3, a3Printer.printedDocument());
+        assertEquals(secondA3, a3Printer.printedDocument());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testDefaultQueueRespectsPaperSizesOfPrinters() throws InterruptedException {
+        // Setup
+        var a3Printer = new MockPrinter(PaperSize.A3);
+        var a4Printer = new MockPrinter(PaperSize.A4);
+        var printDispatcher = new DefaultPrintDispatcher(List.of(a4Printer, a3Printer));
+        var firstA3 = new MockDocument().typeName("first a3").paperSize(PaperSize.A3);
+        var secondA3 = new MockDocument().typeName("second a3").paperSize(PaperSize.A3);
+        var a4 = new MockDocument().typeName("a4").paperSize(PaperSize.A4);
+
+        // When
+        printDispatcher.print(firstA3);
+        printDispatcher.print(secondA3);
+        printDispatcher.print(a4);
+
+        // Then
+        assertEquals(a4, a4Printer.printedDocument());
+        assertEquals(firstA3, a3Printer.printedDocument());
+        assertEquals(secondA3, a3Printer.printedDocument());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testRejectQueueIgnoringPaperSizesOfPrinters() {
+        // Setup
+        var printers = List.of(new MockPrinter(PaperSize.A3), new MockPrinter(PaperSize.A4));
+
+        // Expect
+        assertThrows(IllegalArgumentException.class, () -> new DefaultPrintDispatcher(printers, PrintQueue.fifo()));
+        assertThrows(IllegalArgumentException.class, () -> new DefaultPrintDispatcher(printers, PrintQueue.lockFree()));
+    }
+
+    @Test
+    public void testRejectNotSupportedPaperSize() {
+        // Setup
+        var printer = new MockPrinter(PaperSize.A4);
+        var printDispatcher = new DefaultPrintDispatcher(List.of(printer), PrintQueue.byPaperSize());
+        var a3 = new MockDocument().typeName("a3").paperSize(PaperSize.A3);
+
+        // Expect
+        assertThrows(IllegalArgumentException.class, () -> printDispatcher.print(a3));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testHistoryKeepsOnlyMaxEntries() throws InterruptedException, ExecutionException {
+        // Setup
+        var printer = new MockPrinter();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .history(HistoryRetention.unlimited().maxEntries(2))
+                .build();
+        var documents = Stream
+                .iterate(0, i -> i + 1)
+                .limit(5)
+                .map(i -> new MockDocument().typeName(String.valueOf(i)))
+                .collect(Collectors.toList());
+        var jobs = documents.stream().map(printDispatcher::print).collect(Collectors.toList());
+        for (int i = 0; i < documents.size(); i++) {
+            printer.skip();
+        }
+        jobs.get(4).completion().get();
+
+        // When
+        var printedList = printDispatcher.printedDocs();
+
+        // Then
+        assertEquals(documents.subList(3, 5), printedList);
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testHistoryForgetsOutdatedDocs() throws InterruptedException, ExecutionException {
+        // Setup
+        var nanoTime = new AtomicLong();
+        var printer = new MockPrinter();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .clock(nanoTime::get)
+                .history(HistoryRetention.unlimited().maxAge(Duration.ZERO))
+                .build();
+        var first = new MockDocument().typeName("first");
+        var second = new MockDocument().typeName("second");
+        var firstJob = printDispatcher.print(first);
+        printer.skip();
+        firstJob.completion().get();
+        nanoTime.incrementAndGet();
+        var secondJob = printDispatcher.print(second);
+        printer.skip();
+        secondJob.completion().get();
+
+        // When
+        var printedList = printDispatcher.printedDocs();
+
+        // Then
+        assertEquals(List.of(second), printedList);
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testRecoverNotFinishedDocsFromJournal(@TempDir Path dir) throws InterruptedException, ExecutionException {
+        // Setup
+        var journal = PrintJournal.of(dir.resolve("print.journal"));
+        var crashedPrinter = new MockPrinter();
+        var crashedDispatcher = DefaultPrintDispatcher.builder()
+                .printer(crashedPrinter)
+                .journal(journal)
+                .build();
+        var printed = crashedDispatcher.print(new MockDocument().typeName("printed"));
+        crashedPrinter.printedDocument();
+        printed.completion().get();
+        crashedDispatcher.print(new MockDocument().typeName("active"));
+        crashedPrinter.waitForStartPrinting();
+        var cancelled = crashedDispatcher.print(new MockDocument().typeName("cancelled"));
+        crashedDispatcher.cancel(cancelled.id());
+        crashedDispatcher.print(new MockDocument().typeName("queued").priority(7));
+
+        // When
+        var printer = new MockPrinter();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .journal(journal)
+                .build();
+
+        // Then
+        var recovered = printDispatcher.recovered().stream()
+                                       .map(PrintJob::document)
+                                       .collect(Collectors.toList());
+        assertEquals(List.of("active", "queued"), recovered.stream().map(Document::typeName).collect(Collectors.toList()));
+        assertEquals(7, recovered.get(1).priority());
+        assertEquals("active", printer.printedDocument().typeName());
+
+        // Cleanup
+        printDispatcher.stop();
+        crashedDispatcher.stop();
+    }
+
+    @Test
+    public void testDoNotRecoverDocCancelledByHandle(@TempDir Path dir) throws InterruptedException {
+        // Setup
+        var journal = PrintJournal.of(dir.resolve("print.journal"));
+        var crashedPrinter = new MockPrinter();
+        var crashedDispatcher = DefaultPrintDispatcher.builder()
+                .printer(crashedPrinter)
+                .journal(journal)
+                .build();
+        crashedDispatcher.print(new MockDocument().typeName("active"));
+        crashedPrinter.waitForStartPrinting();
+        var cancelled = crashedDispatcher.print(new MockDocument().typeName("cancelled"));
+
+        // When
+        cancelled.cancel();
+        crashedDispatcher.print(new MockDocument().typeName("queued"));
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(new MockPrinter())
+                .journal(journal)
+                .build();
+
+        // Then
+        assertEquals(List.of("active", "queued"), printDispatcher.recovered().stream()
+                                                       .map(job -> job.document().typeName())
+                                                       .collect(Collectors.toList()));
+
+        // Cleanup
+        printDispatcher.stop();
+        crashedDispatcher.stop();
+    }
+
+    @Test
+    public void testStopRemovesReturnedDocsFromJournal(@TempDir Path dir) throws InterruptedException {
+        // Setup
+        var journal = PrintJournal.of(dir.resolve("print.journal"));
+        var printer = new MockPrinter();
+        var stoppedDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .journal(journal)
+                .build();
+        stoppedDispatcher.print(new MockDocument().typeName("active"));
+        stoppedDispatcher.print(new MockDocument().typeName("queued"));
+        printer.waitForStartPrinting();
+        assertEquals(2, stoppedDispatcher.stop().size());
+
+        // When
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(new MockPrinter())
+                .journal(journal)
+                .build();
+
+        // Then
+        assertTrue(printDispatcher.recovered().isEmpty());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testHistoryAgeByInjectedClock() throws InterruptedException, ExecutionException {
+        // Setup
+        var nanoTime = new AtomicLong();
+        var printer = new MockPrinter();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .clock(nanoTime::get)
+                .history(HistoryRetention.unlimited().maxAge(Duration.ofHours(1)))
+                .build();
+        var first = new MockDocument().typeName("first");
+        var second = new MockDocument().typeName("second");
+        var firstJob = printDispatcher.print(first);
+        printer.skip();
+        firstJob.completion().get();
+
+        // When
+        nanoTime.addAndGet(Duration.ofHours(2).toNanos());
+        var secondJob = printDispatcher.print(second);
+        printer.skip();
+        secondJob.completion().get();
+
+        // Then
+        assertEquals(List.of(second), printDispatcher.printedDocs());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testIdleHistoryForgetsOutdatedDocsOnRead() throws InterruptedException, ExecutionException {
+        // Setup
+        var nanoTime = new AtomicLong();
+        var printer = new MockPrinter();
+        var printDispatcher = DefaultPrintDispatcher.builder()
+                .printer(printer)
+                .clock(nanoTime::get)
+                .history(HistoryRetention.unlimited().maxAge(Duration.ofHours(1)))
+                .build();
+        var job = printDispatcher.print(new MockDocument().typeName("old"));
+        printer.skip();
+        job.completion().get();
+
+        // When
+        nanoTime.addAndGet(Duration.ofHours(2).toNanos());
+
+        // Then
+        assertEquals(List.of(), printDispatcher.printedDocs());
+        assertEquals(List.of(), printDispatcher.printedDocs(PrintedQuery.byCompletionTime()));
+        assertNull(printDispatcher.status(job.id()));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    private static void awaitStatus(PrintJob job, PrintJob.Status status) throws InterruptedException {
+        for (int i = 0; i < 100 && job.status() != status; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(status, job.status());
+    }
+
+    /**
+     * Records runs and counts stops of the printer.
+     */
+    private static class RunPrinter extends MockPrinter {
+        private final Queue<List<Document>> runs;
+        private final AtomicInteger stops;
+
+        RunPrinter(Queue<List<Document>> runs, AtomicInteger stops) {
+            this.runs = runs;
+            this.stops = stops;
+        }
+
+        @Override
+        public void printAll(List<Document> documents, Consumer<Document> printed) throws InterruptedException {
+            runs.add(documents);
+            super.printAll(documents, printed);
+        }
+
+        @Override
+        public Document stop() {
+            stops.incrementAndGet();
+            return super.stop();
+        }
+    }
+
+    private static class EventSubscriber implements Flow.Subscriber<PrintEvent> {
+
+        private final long demand;
+        private final Queue<PrintEvent> events = new ConcurrentLinkedQueue<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        EventSubscriber(long demand) {
+            this.demand = demand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (demand > 0) {
+                subscription.request(demand);
+            }
+        }
+
+        @Override
+        public void onNext(PrintEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        public List<PrintJob.Status> statuses(PrintJob job) {
+            return events.stream()
+                    .filter(event -> event.job() == job)
+                    .map(PrintEvent::status)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static class MockPrinter implements Printer {
+
+        private final TransferQueue<Document> queue = new LinkedTransferQueue<>();
+        private final Set<PaperSize> paperSizes;
+
+        private volatile boolean cancelled = false;
+
+        private volatile CountDownLatch startPrintingNotifier = new CountDownLatch(1);
+        private volatile CountDownLatch cancelPrintingNotifier = new CountDownLatch(1);
+
+        MockPrinter() {
+            this(PaperSize.values());
+        }
+
+        MockPrinter(PaperSize... paperSizes) {
+            this.paperSizes = EnumSet.copyOf(List.of(paperSizes));
+        }
+
+        @Override
+        public Set<PaperSize> supportedPaperSizes() {
+            return paperSizes;
+        }
 
         @Override
         public void print(Document document) throws InterruptedException {
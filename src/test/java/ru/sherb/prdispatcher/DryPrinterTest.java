@@ -5,11 +5,11 @@ import org.junit.jupiter.api.function.Executable;
 import org.junit.platform.commons.util.ExceptionUtils;
 
 import java.time.Duration;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTimeout;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -42,13 +42,12 @@ class DryPrinterTest {
                 .typeName("test doc")
                 .printDuration(duration);
 
-        var barrier = new CountDownLatch(1);
-        var thread = new Thread(() -> assertTimeout(duration, () -> {
-            barrier.countDown();
-            printer.print(doc);
-        }));
+        var thread = new Thread(() -> assertTimeout(duration, () -> printer.print(doc)));
         thread.start();
-        barrier.await(100, TimeUnit.MILLISECONDS);
+        // stop() before the print has started does not affect it
+        while (printer.printingDocument() == null) {
+            Thread.yield();
+        }
 
         // When
         var current = printer.stop();
@@ -59,6 +58,57 @@ class DryPrinterTest {
         assertEquals(doc, current);
     }
 
+    @Test
+    public void testPrintZeroDurationAtOnce() {
+        // Setup
+        var printer = new DryPrinter();
+        var doc = new MockDocument()
+                .typeName("test doc")
+                .printDuration(Duration.ZERO);
+
+        // Expect
+        assertTimeout(Duration.ofMillis(100), () -> printer.print(doc));
+    }
+
+    @Test
+    public void testAccelerateTime() {
+        // Setup
+        var printer = new DryPrinter().timeScale(100);
+        var doc = new MockDocument()
+                .typeName("test doc")
+                .printDuration(Duration.ofSeconds(5));
+
+        // Expect
+        assertAfterDuration(Duration.ofMillis(50), () -> assertTimeout(Duration.ofSeconds(1), () -> printer.print(doc)));
+    }
+
+    @Test
+    public void testJitterKeepsDurationInBounds() {
+        // Setup
+        var printer = new DryPrinter().jitter(0.5).seed(42);
+        var doc = new MockDocument()
+                .typeName("test doc")
+                .printDuration(Duration.ofMillis(100));
+
+        // Expect
+        for (int i = 0; i < 3; i++) {
+            assertAfterDuration(Duration.ofMillis(50), () -> printer.print(doc));
+        }
+    }
+
+    @Test
+    public void testSimulateFailure() {
+        // Setup
+        var printer = new DryPrinter().failureRate(1).seed(42);
+        var doc = new MockDocument()
+                .typeName("test doc")
+                .printDuration(Duration.ofMillis(100));
+
+        // Expect
+        assertThrows(IllegalStateException.class, () -> printer.print(doc));
+        assertNull(printer.printingDocument());
+    }
+
     /**
      * @see org.junit.jupiter.api.AssertTimeout#assertTimeout
      */
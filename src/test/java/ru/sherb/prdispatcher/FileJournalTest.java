@@ -0,0 +1,127 @@
+package ru.sherb.prdispatcher;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileJournalTest {
+
+    @Test
+    public void testRecoverAllDocumentProperties(@TempDir Path dir) {
+        // Setup
+        var settings = PrintJournal.of(dir.resolve("print.journal"));
+        var document = new MockDocument()
+                .typeName("invoice")
+                .paperSize(PaperSize.A3)
+                .printDuration(Duration.ofMillis(1500))
+                .priority(3)
+                .deadline(Instant.ofEpochSecond(1_000_000, 42));
+        var journal = new FileJournal(settings);
+        journal.start(List.of());
+
+        // When
+        journal.awaitDurable(journal.submitted(new PrintJob(document)));
+        journal.close();
+
+        // Then
+        var recovered = new FileJournal(settings).recover();
+        assertEquals(1, recovered.size());
+        var actual = recovered.get(0);
+        assertEquals("invoice", actual.typeName());
+        assertEquals(PaperSize.A3, actual.paperSize());
+        assertEquals(Duration.ofMillis(1500), actual.printDuration());
+        assertEquals(3, actual.priority());
+        assertEquals(Instant.ofEpochSecond(1_000_000, 42), actual.deadline());
+    }
+
+    @Test
+    public void testIgnoreTornRecordAtTheEnd(@TempDir Path dir) throws IOException {
+        // Setup
+        var file = dir.resolve("print.journal");
+        var journal = new FileJournal(PrintJournal.of(file));
+        journal.start(List.of());
+        var cancelled = new PrintJob(new MockDocument().typeName("cancelled"));
+        var finished = new PrintJob(new MockDocument().typeName("finished"));
+        var queued = new PrintJob(new MockDocument().typeName("queued"));
+        journal.submitted(List.of(cancelled, finished, queued));
+        journal.cancelled(cancelled);
+        journal.started(finished);
+        journal.finished(finished, true);
+        journal.close();
+
+        // When
+        Files.write(file, new byte[]{0, 0, 0, 42, 1, 0, 0}, StandardOpenOption.APPEND);
+
+        // Then
+        var recovered = new FileJournal(PrintJournal.of(file)).recover();
+        assertEquals(1, recovered.size());
+        assertEquals("queued", recovered.get(0).typeName());
+    }
+
+    @Test
+    public void testCompactOnStart(@TempDir Path dir) throws IOException {
+        // Setup
+        var file = dir.resolve("print.journal");
+        var journal = new FileJournal(PrintJournal.of(file));
+        journal.start(List.of());
+        for (int i = 0; i < 100; i++) {
+            var job = new PrintJob(new MockDocument().typeName(String.valueOf(i)));
+            journal.submitted(job);
+            journal.finished(job, true);
+        }
+        var queued = new PrintJob(new MockDocument().typeName("queued"));
+        journal.submitted(queued);
+        journal.close();
+        long sizeBefore = Files.size(file);
+
+        // When
+        var restarted = new FileJournal(PrintJournal.of(file));
+        var recovered = restarted.recover();
+        restarted.start(List.of(new PrintJob(recovered.get(0))));
+        restarted.close();
+
+        // Then
+        assertTrue(Files.size(file) < sizeBefore / 100, () -> "journal is not compacted: " + sizeBefore);
+        assertEquals("queued", new FileJournal(PrintJournal.of(file)).recover().get(0).typeName());
+    }
+
+    @Test
+    public void testCompactWhileRunning(@TempDir Path dir) throws IOException {
+        // Setup
+        var compacted = dir.resolve("compacted.journal");
+        var appended = dir.resolve("appended.journal");
+
+        // When
+        printAndQueueOne(new FileJournal(PrintJournal.of(compacted).compactAfter(10)));
+        printAndQueueOne(new FileJournal(PrintJournal.of(appended)));
+
+        // Then
+        assertTrue(Files.size(compacted) < Files.size(appended) / 4,
+                   () -> "journal is not compacted: " + compacted);
+        var recovered = new FileJournal(PrintJournal.of(compacted)).recover();
+        assertEquals(1, recovered.size());
+        assertEquals("queued", recovered.get(0).typeName());
+    }
+
+    private static void printAndQueueOne(FileJournal journal) {
+        journal.start(List.of());
+        for (int i = 0; i < 100; i++) {
+            var job = new PrintJob(new MockDocument().typeName(String.valueOf(i)));
+            journal.awaitDurable(journal.submitted(job));
+            journal.started(job);
+            journal.finished(job, true);
+        }
+        journal.awaitDurable(journal.submitted(new PrintJob(new MockDocument().typeName("queued"))));
+        journal.close();
+    }
+}
@@ -0,0 +1,174 @@
+package ru.sherb.prdispatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LockFreePrintQueueTest {
+
+    private static final Printer PRINTER = new DryPrinter();
+
+    @Test
+    public void testTakeInOrderOfArrival() throws InterruptedException {
+        // Setup
+        var queue = new LockFreePrintQueue();
+        var first = new MockDocument().typeName("first");
+        var second = new MockDocument().typeName("second");
+        var third = new MockDocument().typeName("third");
+
+        // When
+        queue.put(new PrintJob(first));
+        queue.putAll(List.of(new PrintJob(second), new PrintJob(third)));
+
+        // Then
+        assertEquals(3, queue.size());
+        assertEquals(first, queue.take(PRINTER).document());
+        assertEquals(second, queue.take(PRINTER).document());
+        assertEquals(third, queue.take(PRINTER).document());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testParkedPrinterIsWokenUpByPut() throws InterruptedException {
+        // Setup
+        var queue = new LockFreePrintQueue();
+        var document = new MockDocument().typeName("late");
+        var taken = new ArrayList<Document>();
+        var done = new CountDownLatch(1);
+        var printer = new Thread(() -> {
+            try {
+                taken.add(queue.take(PRINTER).document());
+                done.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        printer.start();
+
+        // When
+        Thread.sleep(50);
+        queue.put(new PrintJob(document));
+
+        // Then
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(List.of(document), taken);
+    }
+
+    @Test
+    public void testBatchWakesUpEveryParkedPrinter() throws InterruptedException {
+        // Setup
+        var queue = new LockFreePrintQueue();
+        int printers = 4;
+        var done = new CountDownLatch(printers);
+        for (int i = 0; i < printers; i++) {
+            new Thread(() -> {
+                try {
+                    queue.take(PRINTER);
+                    done.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            }).start();
+        }
+        Thread.sleep(50);
+
+        // When
+        queue.putAll(IntStream.range(0, printers)
+                              .mapToObj(i -> new PrintJob(new MockDocument().typeName(String.valueOf(i))))
+                              .collect(Collectors.toList()));
+
+        // Then
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testParkedPrinterDoesNotBlockPoll() throws InterruptedException {
+        // Setup
+        var queue = new LockFreePrintQueue();
+        var printer = new Thread(() -> {
+            try {
+                queue.take(PRINTER);
+            } catch (InterruptedException ignored) {
+            }
+        });
+        printer.start();
+        Thread.sleep(50);
+
+        // When
+        var polled = assertTimeoutPreemptively(Duration.ofSeconds(1), () -> queue.pollIf(PRINTER, job -> true));
+
+        // Then
+        assertNull(polled);
+
+        // Cleanup
+        printer.interrupt();
+        printer.join();
+    }
+
+    @Test
+    public void testInterruptParkedPrinter() throws InterruptedException {
+        // Setup
+        var queue = new LockFreePrintQueue();
+        var interrupted = new CountDownLatch(1);
+        var printer = new Thread(() -> {
+            try {
+                queue.take(PRINTER);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        printer.start();
+        Thread.sleep(50);
+
+        // When
+        printer.interrupt();
+
+        // Then
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testKeepOrderOfEveryProducer() throws InterruptedException {
+        // Setup
+        var queue = new LockFreePrintQueue();
+        int producers = 8;
+        int documents = 10_000;
+        var threads = IntStream.range(0, producers)
+                               .mapToObj(p -> new Thread(() -> {
+                                   for (int i = 0; i < documents; i++) {
+                                       queue.put(new PrintJob(new MockDocument().typeName(p + ":" + i)));
+                                   }
+                               }))
+                               .collect(Collectors.toList());
+
+        // When
+        threads.forEach(Thread::start);
+        var lastByProducer = new HashMap<String, Integer>();
+        for (int i = 0; i < producers * documents; i++) {
+            var typeName = queue.take(PRINTER).document().typeName().split(":");
+            int previous = lastByProducer.getOrDefault(typeName[0], -1);
+            int current = Integer.parseInt(typeName[1]);
+
+            // Then
+            assertEquals(previous + 1, current);
+            lastByProducer.put(typeName[0], current);
+        }
+        assertEquals(0, queue.size());
+
+        // Cleanup
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
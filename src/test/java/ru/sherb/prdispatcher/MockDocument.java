@@ -1,6 +1,7 @@
 package ru.sherb.prdispatcher;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Objects;
 
 /**
@@ -12,6 +13,8 @@ public class MockDocument implements Document {
     private String typeName = "";
     private PaperSize paperSize = PaperSize.A4;
     private Duration printDuration = Duration.ZERO;
+    private int priority = 0;
+    private Instant deadline = null;
 
     @Override
     public String typeName() {
@@ -28,6 +31,16 @@ public class MockDocument implements Document {
         return printDuration;
     }
 
+    @Override
+    public int priority() {
+        return priority;
+    }
+
+    @Override
+    public Instant deadline() {
+        return deadline;
+    }
+
     public MockDocument typeName(String typeName) {
         this.typeName = typeName;
         return this;
@@ -43,19 +56,31 @@ public class MockDocument implements Document {
         return this;
     }
 
+    public MockDocument priority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public MockDocument deadline(Instant deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         MockDocument that = (MockDocument) o;
         return paperSize == that.paperSize &&
+                priority == that.priority &&
                 Objects.equals(typeName, that.typeName) &&
-                Objects.equals(printDuration, that.printDuration);
+                Objects.equals(printDuration, that.printDuration) &&
+                Objects.equals(deadline, that.deadline);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(typeName, paperSize, printDuration);
+        return Objects.hash(typeName, paperSize, printDuration, priority, deadline);
     }
 
     @Override
@@ -0,0 +1,134 @@
+package ru.sherb.prdispatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrintSimulationTest {
+
+    private static final int JOBS = 100_000;
+
+    @Test
+    public void testPrintInVirtualTime() {
+        // Setup
+        var printer = new DryPrinter();
+        var simulation = new PrintSimulation(List.of(printer));
+        var documents = Stream.generate(() -> new MockDocument().printDuration(Duration.ofHours(1)))
+                              .limit(24)
+                              .iterator();
+
+        // When
+        simulation.submitEvery(Duration.ofHours(2), documents);
+        simulation.run();
+
+        // Then
+        var snapshot = simulation.metrics().snapshot();
+        assertEquals(24, snapshot.printed());
+        assertEquals(Duration.ofHours(47), simulation.now());
+        assertEquals(0, simulation.metrics().waitTime().maxNanos());
+        assertEquals(0.5, snapshot.utilization(printer), 0.02);
+
+        // Cleanup
+        simulation.close();
+    }
+
+    @Test
+    public void testWaitForBusyPrinters() {
+        // Setup
+        var first = new DryPrinter();
+        var second = new DryPrinter();
+        var simulation = new PrintSimulation(List.of(first, second));
+
+        // When
+        var jobs = IntStream.range(0, 4)
+                            .mapToObj(i -> simulation.submitAt(Duration.ZERO, new MockDocument().printDuration(Duration.ofSeconds(1))))
+                            .collect(Collectors.toList());
+        simulation.run();
+
+        // Then
+        assertEquals(Duration.ofSeconds(2), simulation.now());
+        assertTrue(jobs.stream().allMatch(job -> job.join().status() == PrintJob.Status.PRINTED));
+        assertEquals(Duration.ofMillis(500).toNanos(), simulation.metrics().waitTime().meanNanos());
+        assertEquals(1.0, simulation.metrics().snapshot().utilization(first), 0.001);
+
+        // Cleanup
+        simulation.close();
+    }
+
+    @Test
+    public void testCancelPrintingJob() {
+        // Setup
+        var simulation = new PrintSimulation(List.of(new DryPrinter()));
+        var cancelled = simulation.submitAt(Duration.ZERO, new MockDocument().printDuration(Duration.ofSeconds(10)));
+        var next = simulation.submitAt(Duration.ZERO, new MockDocument().printDuration(Duration.ofSeconds(1)));
+
+        // When
+        simulation.at(Duration.ofSeconds(3), () -> simulation.dispatcher().cancel(cancelled.join().id()));
+        simulation.run();
+
+        // Then
+        assertEquals(PrintJob.Status.ABORTED, cancelled.join().status());
+        assertEquals(PrintJob.Status.PRINTED, next.join().status());
+        assertEquals(Duration.ofSeconds(4), simulation.now());
+        assertEquals(1, simulation.metrics().snapshot().aborted());
+
+        // Cleanup
+        simulation.close();
+    }
+
+    @Test
+    public void testSkipFailedPrint() {
+        // Setup
+        var simulation = new PrintSimulation(List.of(new DryPrinter().failureRate(1).seed(42)));
+
+        // When
+        var failed = simulation.submitAt(Duration.ZERO, new MockDocument().printDuration(Duration.ofSeconds(10)));
+        simulation.run();
+
+        // Then
+        assertEquals(PrintJob.Status.ABORTED, failed.join().status());
+        assertTrue(simulation.now().compareTo(Duration.ofSeconds(10)) < 0, () -> "failed at " + simulation.now());
+        assertEquals(0, simulation.metrics().snapshot().printed());
+
+        // Cleanup
+        simulation.close();
+    }
+
+    @Test
+    public void testManyJobsReproducibly() {
+        // Setup
+        var result = assertTimeout(Duration.ofSeconds(30), () -> simulateManyJobs(42));
+
+        // Expect
+        assertEquals(result, simulateManyJobs(42));
+        assertTrue(result.contains("printed: "), result);
+    }
+
+    private static String simulateManyJobs(long seed) {
+        var printers = IntStream.range(0, 8)
+                                .mapToObj(i -> new DryPrinter().jitter(0.5).failureRate(0.01).seed(seed + i))
+                                .collect(Collectors.toList());
+        var simulation = new PrintSimulation(printers, PrintQueue::shortestJobFirst);
+        var durations = List.of(Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(30));
+        var documents = IntStream.range(0, JOBS)
+                                 .mapToObj(i -> (Document) new MockDocument().printDuration(durations.get(i % durations.size())))
+                                 .iterator();
+
+        simulation.submitEvery(Duration.ofSeconds(2), documents);
+        simulation.run();
+
+        simulation.close();
+
+        var metrics = simulation.metrics();
+        return metrics.snapshot() + ", now: " + simulation.now() +
+                ", p99 wait: " + metrics.waitTime().percentile(99);
+    }
+}
@@ -0,0 +1,85 @@
+package ru.sherb.prdispatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrintStatisticsTest {
+
+    @Test
+    public void testEmptyStatistics() {
+        // Setup
+        var statistics = new PrintStatistics();
+
+        // Expect
+        assertEquals(0, statistics.count());
+        assertEquals(0, statistics.minNanos());
+        assertEquals(0, statistics.maxNanos());
+        assertEquals(0, statistics.meanNanos());
+        assertEquals(0, statistics.percentileNanos(99));
+    }
+
+    @Test
+    public void testAggregates() {
+        // Setup
+        var statistics = new PrintStatistics();
+
+        // When
+        statistics.record(Duration.ofMillis(1));
+        statistics.record(Duration.ofMillis(2));
+        statistics.record(Duration.ofMillis(6));
+
+        // Then
+        assertEquals(3, statistics.count());
+        assertEquals(Duration.ofMillis(9).toNanos(), statistics.sumNanos());
+        assertEquals(Duration.ofMillis(1).toNanos(), statistics.minNanos());
+        assertEquals(Duration.ofMillis(6).toNanos(), statistics.maxNanos());
+        assertEquals(Duration.ofMillis(3), statistics.mean());
+    }
+
+    @Test
+    public void testRecordNegativeDurationAsZero() {
+        // Setup
+        var statistics = new PrintStatistics();
+
+        // When
+        statistics.record(Duration.ofMillis(-5));
+        statistics.record(Duration.ofMillis(4));
+
+        // Then
+        assertEquals(2, statistics.count());
+        assertEquals(0, statistics.minNanos());
+        assertEquals(Duration.ofMillis(2), statistics.mean());
+    }
+
+    @Test
+    public void testPercentileRelativeError() {
+        // Setup
+        var statistics = new PrintStatistics();
+        for (long millis = 1; millis <= 1000; millis++) {
+            statistics.record(Duration.ofMillis(millis));
+        }
+
+        // Expect
+        assertCloseTo(Duration.ofMillis(500).toNanos(), statistics.percentileNanos(50));
+        assertCloseTo(Duration.ofMillis(990).toNanos(), statistics.percentileNanos(99));
+        assertEquals(Duration.ofMillis(1000).toNanos(), statistics.percentileNanos(100));
+    }
+
+    @Test
+    public void testBucketBounds() {
+        // Expect
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 1_000_000_007, Long.MAX_VALUE}) {
+            int index = PrintStatistics.indexOf(value);
+            assertTrue(PrintStatistics.highestValueOf(index) >= value, () -> "value " + value);
+            assertTrue(index == 0 || PrintStatistics.highestValueOf(index - 1) < value, () -> "value " + value);
+        }
+    }
+
+    private void assertCloseTo(long expected, long actual) {
+        assertTrue(Math.abs(expected - actual) <= expected / 32, () -> "expected ~" + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,167 @@
+package ru.sherb.prdispatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScheduledPrintQueueTest {
+
+    private static final Printer PRINTER = new DryPrinter();
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    public void testTakeGreaterPriorityFirst() throws InterruptedException {
+        // Setup
+        var queue = new ScheduledPrintQueue(ScheduledPrintQueue.byPriority(Duration.ofSeconds(1).toNanos()), nanoTime::get);
+        var low = new MockDocument().typeName("low").priority(0);
+        var high = new MockDocument().typeName("high").priority(5);
+
+        // When
+        queue.put(new PrintJob(low));
+        queue.put(new PrintJob(high));
+
+        // Then
+        assertEquals(high, queue.take(PRINTER).document());
+        assertEquals(low, queue.take(PRINTER).document());
+    }
+
+    @Test
+    public void testRejectNotPositiveAging() {
+        // Expect
+        assertThrows(IllegalArgumentException.class, () -> PrintQueue.byPriority(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> PrintQueue.byPriority(Duration.ofNanos(-1)));
+        PrintQueue.byPriority(Duration.ofNanos(1));
+    }
+
+    @Test
+    public void testSamePriorityInOrderOfArrival() throws InterruptedException {
+        // Setup
+        var queue = new ScheduledPrintQueue(ScheduledPrintQueue.byPriority(Duration.ofSeconds(1).toNanos()), nanoTime::get);
+        var first = new MockDocument().typeName("first").priority(1);
+        var second = new MockDocument().typeName("second").priority(1);
+
+        // When
+        queue.put(new PrintJob(first));
+        queue.put(new PrintJob(second));
+
+        // Then
+        assertEquals(first, queue.take(PRINTER).document());
+        assertEquals(second, queue.take(PRINTER).document());
+    }
+
+    @Test
+    public void testLowPriorityIsNotStarved() throws InterruptedException {
+        // Setup
+        var queue = new ScheduledPrintQueue(ScheduledPrintQueue.byPriority(Duration.ofSeconds(1).toNanos()), nanoTime::get);
+        var low = new MockDocument().typeName("low").priority(0);
+        var high = new MockDocument().typeName("high").priority(2);
+        queue.put(new PrintJob(low));
+
+        // When
+        nanoTime.addAndGet(Duration.ofSeconds(3).toNanos());
+        queue.put(new PrintJob(high));
+
+        // Then
+        assertEquals(low, queue.take(PRINTER).document());
+        assertEquals(high, queue.take(PRINTER).document());
+    }
+
+    @Test
+    public void testDocumentWithDeadlineOvertakesPriority() throws InterruptedException {
+        // Setup
+        var queue = new ScheduledPrintQueue(ScheduledPrintQueue.byPriority(Duration.ofSeconds(1).toNanos()), nanoTime::get);
+        var high = new MockDocument().typeName("high").priority(10);
+        var urgent = new MockDocument()
+                .typeName("urgent")
+                .printDuration(Duration.ofSeconds(5))
+                .deadline(Instant.now().plusSeconds(5));
+
+        // When
+        queue.put(new PrintJob(high));
+        queue.put(new PrintJob(urgent));
+        nanoTime.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        // Then
+        assertEquals(urgent, queue.take(PRINTER).document());
+        assertEquals(high, queue.take(PRINTER).document());
+    }
+
+    @Test
+    public void testDeadlineComesByClockOfQueue() throws InterruptedException {
+        // Setup
+        var origin = Instant.now();
+        var queue = new ScheduledPrintQueue(ScheduledPrintQueue.byPriority(Duration.ofSeconds(1).toNanos()), nanoTime::get);
+        var high = new MockDocument().typeName("high").priority(10);
+        var urgent = new MockDocument()
+                .typeName("urgent")
+                .printDuration(Duration.ofSeconds(1))
+                .deadline(origin.plusSeconds(105));
+        nanoTime.addAndGet(Duration.ofSeconds(100).toNanos());
+        queue.put(new PrintJob(high));
+        queue.put(new PrintJob(urgent));
+
+        // When
+        nanoTime.addAndGet(Duration.ofMillis(4500).toNanos());
+
+        // Then
+        assertEquals(urgent, queue.take(PRINTER).document());
+        assertEquals(high, queue.take(PRINTER).document());
+    }
+
+    @Test
+    public void testTakeShortestJobFirst() throws InterruptedException {
+        // Setup
+        var queue = new ScheduledPrintQueue(ScheduledPrintQueue.shortestJobFirst(), nanoTime::get);
+        var longJob = new MockDocument().typeName("long").printDuration(Duration.ofMinutes(1));
+        var shortJob = new MockDocument().typeName("short").printDuration(Duration.ofSeconds(1));
+        queue.put(new PrintJob(longJob));
+        nanoTime.addAndGet(Duration.ofSeconds(10).toNanos());
+        queue.put(new PrintJob(shortJob));
+
+        // Expect
+        assertEquals(shortJob, queue.take(PRINTER).document());
+        assertEquals(longJob, queue.take(PRINTER).document());
+    }
+
+    @Test
+    public void testLongJobIsNotStarved() throws InterruptedException {
+        // Setup
+        var queue = new ScheduledPrintQueue(ScheduledPrintQueue.shortestJobFirst(), nanoTime::get);
+        var longJob = new MockDocument().typeName("long").printDuration(Duration.ofMinutes(1));
+        var shortJob = new MockDocument().typeName("short").printDuration(Duration.ofSeconds(1));
+        queue.put(new PrintJob(longJob));
+        nanoTime.addAndGet(Duration.ofMinutes(2).toNanos());
+        queue.put(new PrintJob(shortJob));
+
+        // Expect
+        assertEquals(longJob, queue.take(PRINTER).document());
+        assertEquals(shortJob, queue.take(PRINTER).document());
+    }
+
+    @Test
+    public void testDrainInOrderOfArrival() {
+        // Setup
+        var queue = new ScheduledPrintQueue(ScheduledPrintQueue.shortestJobFirst(), nanoTime::get);
+        var longJob = new MockDocument().typeName("long").printDuration(Duration.ofMinutes(1));
+        var shortJob = new MockDocument().typeName("short").printDuration(Duration.ofSeconds(1));
+        queue.put(new PrintJob(longJob));
+        queue.put(new PrintJob(shortJob));
+
+        // When
+        List<PrintJob> drained = new ArrayList<>();
+        queue.drainTo(drained);
+
+        // Then
+        assertEquals(List.of(longJob, shortJob), drained.stream().map(PrintJob::document).collect(Collectors.toList()));
+        assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,218 @@
+package ru.sherb.prdispatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedPrintDispatcherTest {
+
+    @Test
+    public void testRouteSameKeyToSameShard() throws InterruptedException, ExecutionException {
+        // Setup
+        var first = new DefaultPrintDispatcher(new DryPrinter());
+        var second = new DefaultPrintDispatcher(new DryPrinter());
+        var third = new DefaultPrintDispatcher(new DryPrinter());
+        var printDispatcher = ShardedPrintDispatcher.builder()
+                .shard("first", first)
+                .shard("second", second)
+                .shard("third", third)
+                .build();
+        var documents = IntStream.range(0, 30)
+                .mapToObj(i -> new MockDocument().typeName("type" + i % 10))
+                .collect(Collectors.toList());
+
+        // When
+        for (PrintJob job : printDispatcher.printAll(documents)) {
+            job.completion().get();
+        }
+
+        // Then
+        var types = List.of(first, second, third).stream()
+                .map(shard -> shard.printedDocs().stream().map(Document::typeName).collect(Collectors.toSet()))
+                .collect(Collectors.toList());
+        assertEquals(10, types.stream().mapToInt(Set::size).sum());
+        assertEquals(30, printDispatcher.printedDocs().size());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testMergePrintedPagesOfShards() throws InterruptedException, ExecutionException {
+        // Setup
+        var printDispatcher = ShardedPrintDispatcher.builder()
+                .shard("first", new DefaultPrintDispatcher(new DryPrinter().timeScale(1e6)))
+                .shard("second", DefaultPrintDispatcher.builder()
+                        .printer(new DryPrinter().timeScale(1e6))
+                        .indexPrintedDocs()
+                        .build())
+                .build();
+        var documents = IntStream.range(1, 21)
+                .mapToObj(i -> new MockDocument().typeName("type" + i).printDuration(Duration.ofSeconds(i)))
+                .collect(Collectors.toList());
+        for (PrintJob job : printDispatcher.printAll(documents)) {
+            job.completion().get();
+        }
+
+        // When
+        var page = printDispatcher.printedDocs(PrintedQuery.byPrintDuration().reversed().offset(2).limit(3));
+
+        // Then
+        assertEquals(documents.subList(15, 18), reversed(page));
+        assertEquals(documents.stream().sorted(Comparator.comparing(Document::printDuration)).collect(Collectors.toList()),
+                printDispatcher.printedDocs(Comparator.comparing(Document::printDuration)));
+        assertEquals(Duration.ofMillis(10_500), printDispatcher.calcAvgPrintDuration());
+        assertEquals(20, printDispatcher.statistics().count());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testKeyKeepsShardUntilItsDocsAreFinished() throws InterruptedException, ExecutionException {
+        // Setup
+        var old = new DefaultPrintDispatcher(new DryPrinter());
+        var added = new DefaultPrintDispatcher(new DryPrinter());
+        var printDispatcher = ShardedPrintDispatcher.builder().shard("old", old).build();
+        var key = keyOf("new", new HashRing<String>(128).with("old", "old").with("new", "new"));
+        var printing = printDispatcher.print(new MockDocument().typeName(key).printDuration(Duration.ofMinutes(1)));
+        var queued = printDispatcher.print(new MockDocument().typeName(key));
+
+        // When
+        printDispatcher.addShard("new", added);
+        var sticky = printDispatcher.print(new MockDocument().typeName(key));
+        printing.cancel();
+        queued.completion().get();
+        sticky.completion().get();
+        var moved = printDispatcher.print(new MockDocument().typeName(key));
+        moved.completion().get();
+
+        // Then
+        assertNotNull(old.status(sticky.id()));
+        assertNull(added.status(sticky.id()));
+        assertNotNull(added.status(moved.id()));
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testRemoveShardMovesNotPrintedDocs() throws InterruptedException, ExecutionException {
+        // Setup
+        var removed = new DefaultPrintDispatcher(new DryPrinter());
+        var kept = new DefaultPrintDispatcher(new DryPrinter());
+        var printDispatcher = ShardedPrintDispatcher.builder()
+                .shard("removed", removed)
+                .shard("kept", kept)
+                .build();
+        var key = keyOf("removed", new HashRing<String>(128).with("removed", "removed").with("kept", "kept"));
+        var printing = new MockDocument().typeName(key).printDuration(Duration.ofMinutes(1));
+        var queued = new MockDocument().typeName(key);
+        var oldJobs = List.of(printDispatcher.print(printing), printDispatcher.print(queued));
+
+        // When
+        var newJobs = printDispatcher.removeShard("removed");
+        newJobs.get(0).cancel();
+        newJobs.get(1).completion().get();
+
+        // Then
+        assertTrue(oldJobs.stream().allMatch(job -> job.status() == PrintJob.Status.ABORTED));
+        assertEquals(List.of(printing, queued), newJobs.stream().map(PrintJob::document).collect(Collectors.toList()));
+        assertEquals(List.of(queued), kept.printedDocs());
+        assertEquals(Set.of("kept"), printDispatcher.shards().keySet());
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    @Test
+    public void testBlockedPrintDoesNotBlockRebalance() throws InterruptedException {
+        // Setup
+        var shard = DefaultPrintDispatcher.builder()
+                .printer(new DryPrinter())
+                .admission(PrintAdmission.unbounded().maxQueuedDocs(1).block(Duration.ofMinutes(1)))
+                .build();
+        var printDispatcher = ShardedPrintDispatcher.builder().shard("blocked", shard).build();
+        var document = new MockDocument().typeName("blocked").printDuration(Duration.ofMinutes(1));
+        printDispatcher.print(document);
+        printDispatcher.print(document);
+        var producer = new Thread(() -> assertThrows(RejectedExecutionException.class, () -> printDispatcher.print(document)));
+        producer.start();
+        while (producer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        // When
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                                  () -> printDispatcher.addShard("added", new DefaultPrintDispatcher(new DryPrinter())));
+
+        // Then
+        assertEquals(Set.of("blocked", "added"), printDispatcher.shards().keySet());
+
+        // Cleanup
+        printDispatcher.stop();
+        producer.join();
+    }
+
+    @Test
+    public void testCancelLastSubmittedDocAcrossShards() {
+        // Setup
+        var ring = new HashRing<String>(128).with("first", "first").with("second", "second");
+        var firstKey = keyOf("first", ring);
+        var secondKey = keyOf("second", ring);
+        var first = new DefaultPrintDispatcher(new DryPrinter());
+        var second = new DefaultPrintDispatcher(new DryPrinter());
+        var printDispatcher = ShardedPrintDispatcher.builder()
+                .shard("first", first)
+                .shard("second", second)
+                .key(document -> document.priority() == 0 ? firstKey : secondKey)
+                .build();
+        // keep both printers busy so that the reports stay queued
+        printDispatcher.print(new MockDocument().typeName("busy").priority(0).printDuration(Duration.ofMinutes(1)));
+        printDispatcher.print(new MockDocument().typeName("busy").priority(1).printDuration(Duration.ofMinutes(1)));
+        var earlier = printDispatcher.print(new MockDocument().typeName("report").priority(0).printDuration(Duration.ofMinutes(1)));
+        var later = printDispatcher.print(new MockDocument().typeName("report").priority(1).printDuration(Duration.ofMinutes(1)));
+
+        // When
+        var cancelled = printDispatcher.cancel("report");
+
+        // Then
+        assertEquals(later.document(), cancelled);
+        assertNotNull(second.status(later.id()));
+        assertEquals(PrintJob.Status.ABORTED, later.status());
+        assertTrue(earlier.status() != PrintJob.Status.ABORTED);
+
+        // Cleanup
+        printDispatcher.stop();
+    }
+
+    private static String keyOf(String node, HashRing<String> ring) {
+        return IntStream.range(0, 1000)
+                .mapToObj(i -> "key" + i)
+                .filter(key -> ring.get(key).equals(node))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static <T> List<T> reversed(List<T> list) {
+        var result = new ArrayList<>(list);
+        Collections.reverse(result);
+        return result;
+    }
+}
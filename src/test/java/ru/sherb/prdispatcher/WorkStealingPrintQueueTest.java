@@ -0,0 +1,165 @@
+package ru.sherb.prdispatcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkStealingPrintQueueTest {
+
+    private final Printer first = new DryPrinter();
+    private final Printer second = new DryPrinter();
+
+    @Test
+    public void testPutToPrinterWithLeastWork() {
+        // Setup
+        var queue = new WorkStealingPrintQueue();
+        queue.attach(List.of(first, second));
+        var longDoc = new MockDocument().typeName("long").printDuration(Duration.ofMinutes(1));
+        var shortDoc1 = new MockDocument().typeName("short1").printDuration(Duration.ofSeconds(1));
+        var shortDoc2 = new MockDocument().typeName("short2").printDuration(Duration.ofSeconds(1));
+
+        // When
+        queue.put(new PrintJob(longDoc));
+        queue.put(new PrintJob(shortDoc1));
+        queue.put(new PrintJob(shortDoc2));
+
+        // Then
+        assertEquals(longDoc, queue.poll(first).document());
+        assertEquals(shortDoc1, queue.poll(second).document());
+        assertEquals(shortDoc2, queue.poll(second).document());
+    }
+
+    @Test
+    public void testIdlePrinterStealsHalfOfWork() {
+        // Setup
+        var queue = new WorkStealingPrintQueue();
+        queue.attach(List.of(first, second));
+        queue.put(new PrintJob(new MockDocument().typeName("huge").printDuration(Duration.ofMinutes(10))));
+        queue.poll(first);
+        var docs = new ArrayList<Document>();
+        for (int i = 0; i < 4; i++) {
+            var doc = new MockDocument().typeName(String.valueOf(i)).printDuration(Duration.ofSeconds(1));
+            docs.add(doc);
+            queue.put(new PrintJob(doc));
+        }
+
+        // When
+        var stolen = queue.poll(first);
+
+        // Then
+        assertEquals(docs.get(2), stolen.document());
+        assertEquals(docs.get(3), queue.poll(first).document());
+        assertEquals(docs.get(0), queue.poll(second).document());
+        assertEquals(docs.get(1), queue.poll(second).document());
+        assertNull(queue.poll(second));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testPrinterDoesNotStealNotSupportedPaperSize() {
+        // Setup
+        var a3Printer = new DryPrinter() {
+            @Override
+            public Set<PaperSize> supportedPaperSizes() {
+                return Set.of(PaperSize.A3);
+            }
+        };
+        var queue = new WorkStealingPrintQueue();
+        queue.attach(List.of(first, a3Printer));
+        var a4 = new MockDocument().typeName("a4").paperSize(PaperSize.A4);
+
+        // When
+        queue.put(new PrintJob(a4));
+
+        // Then
+        assertNull(queue.poll(a3Printer));
+        assertEquals(a4, queue.poll(first).document());
+    }
+
+    @Test
+    public void testNotSupportedPaperSizeIsNotCounted() {
+        // Setup
+        var a3Printer = new DryPrinter() {
+            @Override
+            public Set<PaperSize> supportedPaperSizes() {
+                return Set.of(PaperSize.A3);
+            }
+        };
+        var queue = new WorkStealingPrintQueue();
+        queue.attach(List.of(a3Printer));
+        var a3 = new PrintJob(new MockDocument().typeName("a3").paperSize(PaperSize.A3));
+        var a4 = new PrintJob(new MockDocument().typeName("a4").paperSize(PaperSize.A4));
+
+        // When
+        assertThrows(IllegalArgumentException.class, () -> queue.put(a4));
+        assertThrows(IllegalArgumentException.class, () -> queue.putAll(List.of(a3, a4)));
+
+        // Then
+        assertEquals(1, queue.size());
+        assertEquals(a3, queue.poll(a3Printer));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testWaitingPrinterIsWokenUpByPut() throws InterruptedException {
+        // Setup
+        var queue = new WorkStealingPrintQueue();
+        queue.attach(List.of(first, second));
+        var document = new MockDocument().typeName("late");
+        var taken = new ArrayList<Document>();
+        var done = new CountDownLatch(2);
+        var printers = List.of(first, second).stream()
+                .map(printer -> new Thread(() -> {
+                    try {
+                        var job = queue.take(printer);
+                        synchronized (taken) {
+                            taken.add(job.document());
+                        }
+                    } catch (InterruptedException ignored) {
+                    }
+                    done.countDown();
+                }))
+                .collect(Collectors.toList());
+        printers.forEach(Thread::start);
+
+        // When
+        queue.put(new PrintJob(document));
+        queue.put(new PrintJob(document));
+
+        // Then
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(List.of(document, document), taken);
+    }
+
+    @Test
+    public void testDrainInOrderOfArrival() {
+        // Setup
+        var queue = new WorkStealingPrintQueue();
+        queue.attach(List.of(first, second));
+        var docs = new ArrayList<Document>();
+        for (int i = 0; i < 5; i++) {
+            var doc = new MockDocument().typeName(String.valueOf(i));
+            docs.add(doc);
+            queue.put(new PrintJob(doc));
+        }
+
+        // When
+        List<PrintJob> drained = new ArrayList<>();
+        queue.drainTo(drained);
+
+        // Then
+        assertEquals(docs, drained.stream().map(PrintJob::document).collect(Collectors.toList()));
+        assertEquals(0, queue.size());
+    }
+}